@@ -0,0 +1,245 @@
+package model;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Applies the filters to as many pixels at once as the processor's vector registers hold, using
+ * the incubating vector API. Every lane performs the same operations in the same order as the
+ * {@link ScalarFilterKernel}, including the double precision luma and HSL arithmetic, so both
+ * kernels produce identical pixels. Pixels left over at the end of a run are handed to the scalar
+ * kernel.
+ * The class can only be loaded when the jdk.incubator.vector module is available, both when
+ * compiling and when running (--add-modules jdk.incubator.vector), so it lives in the separate
+ * src-vector source root, compiled after src only when the module is present, and is only ever
+ * created through {@link FilterKernel#fastest()}.
+ */
+class VectorFilterKernel implements FilterKernel {
+
+  private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+  private static final VectorSpecies<Double> DOUBLES = DoubleVector.SPECIES_PREFERRED;
+  // ints with one lane for each lane of DOUBLES, for the kernels working in double precision
+  private static final VectorSpecies<Integer> DOUBLE_INTS = VectorSpecies.of(int.class,
+          VectorShape.forBitSize(DOUBLES.vectorBitSize() / 2));
+
+  private final ScalarFilterKernel scalar;
+
+  /**
+   * Initializes the kernel.
+   * @throws UnsupportedOperationException - if the processor has no vector registers worth using.
+   */
+  VectorFilterKernel() throws UnsupportedOperationException {
+    if (INTS.length() < 4 || DOUBLES.length() < 2) {
+      throw new UnsupportedOperationException("Vector registers are too narrow.");
+    }
+    this.scalar = new ScalarFilterKernel();
+  }
+
+  @Override
+  public void filterComponent(int[] pixels, int offset, int length, int mask) {
+    int i = offset;
+    for (int upper = offset + INTS.loopBound(length); i < upper; i += INTS.length()) {
+      IntVector.fromArray(INTS, pixels, i).and(mask).intoArray(pixels, i);
+    }
+    this.scalar.filterComponent(pixels, i, offset + length - i, mask);
+  }
+
+  @Override
+  public void changeComponentValue(int[] pixels, int offset, int length, boolean brighten,
+                                   int maxValue) {
+    int i = offset;
+    for (int upper = offset + INTS.loopBound(length); i < upper; i += INTS.length()) {
+      IntVector argb = IntVector.fromArray(INTS, pixels, i);
+      IntVector red = red(argb);
+      IntVector green = green(argb);
+      IntVector blue = blue(argb);
+      IntVector amount = red.max(green).max(blue);
+      changeComponent(argb, red, green, blue, amount, brighten, maxValue).intoArray(pixels, i);
+    }
+    this.scalar.changeComponentValue(pixels, i, offset + length - i, brighten, maxValue);
+  }
+
+  @Override
+  public void changeComponentIntensity(int[] pixels, int offset, int length, boolean brighten,
+                                       int maxValue) {
+    int i = offset;
+    for (int upper = offset + INTS.loopBound(length); i < upper; i += INTS.length()) {
+      IntVector argb = IntVector.fromArray(INTS, pixels, i);
+      IntVector red = red(argb);
+      IntVector green = green(argb);
+      IntVector blue = blue(argb);
+      // the sum is at most 765, for which multiplying by 43691 / 2^17 divides by 3 exactly
+      IntVector amount = red.add(green).add(blue).mul(43691).lanewise(VectorOperators.LSHR, 17);
+      changeComponent(argb, red, green, blue, amount, brighten, maxValue).intoArray(pixels, i);
+    }
+    this.scalar.changeComponentIntensity(pixels, i, offset + length - i, brighten, maxValue);
+  }
+
+  @Override
+  public void changeComponentLuma(int[] pixels, int offset, int length, boolean brighten,
+                                  int maxValue) {
+    int i = offset;
+    for (int upper = offset + DOUBLE_INTS.loopBound(length); i < upper;
+         i += DOUBLE_INTS.length()) {
+      IntVector argb = IntVector.fromArray(DOUBLE_INTS, pixels, i);
+      IntVector red = red(argb);
+      IntVector green = green(argb);
+      IntVector blue = blue(argb);
+      DoubleVector luma = toDouble(red).mul(0.2126).add(toDouble(green).mul(0.7152))
+              .add(toDouble(blue).mul(0.0722));
+      changeComponent(argb, red, green, blue, toInt(luma), brighten, maxValue)
+              .intoArray(pixels, i);
+    }
+    this.scalar.changeComponentLuma(pixels, i, offset + length - i, brighten, maxValue);
+  }
+
+  @Override
+  public void blendDifference(int[] current, int[] background, int offset, int length) {
+    int i = offset;
+    for (int upper = offset + INTS.loopBound(length); i < upper; i += INTS.length()) {
+      IntVector currentPixels = IntVector.fromArray(INTS, current, i);
+      IntVector difference = blue(currentPixels)
+              .sub(blue(IntVector.fromArray(INTS, background, i))).abs();
+      // only the red component is replaced, with the difference of the blue components
+      currentPixels.and(0xFF00FFFF).or(difference.lanewise(VectorOperators.LSHL, 16))
+              .intoArray(current, i);
+    }
+    this.scalar.blendDifference(current, background, i, offset + length - i);
+  }
+
+  @Override
+  public void blendLightness(int[] current, int[] background, int offset, int length,
+                             boolean screen, int maxValue) {
+    int i = offset;
+    for (int upper = offset + DOUBLE_INTS.loopBound(length); i < upper;
+         i += DOUBLE_INTS.length()) {
+      IntVector currentPixels = IntVector.fromArray(DOUBLE_INTS, current, i);
+      IntVector backgroundPixels = IntVector.fromArray(DOUBLE_INTS, background, i);
+      DoubleVector r = toDouble(red(currentPixels)).div(255);
+      DoubleVector g = toDouble(green(currentPixels)).div(255);
+      DoubleVector b = toDouble(blue(currentPixels)).div(255);
+
+      DoubleVector max = r.max(g.max(b));
+      DoubleVector min = r.min(g.min(b));
+      DoubleVector delta = max.sub(min);
+      DoubleVector lightness = max.add(min).div(2);
+      VectorMask<Double> gray = delta.eq(0);
+
+      DoubleVector saturation = delta.div(lightness.mul(2).sub(1).abs().neg().add(1))
+              .blend(0, gray);
+
+      // hue of the largest component, preferring red, then green, then blue
+      DoubleVector hue = r.sub(g).div(delta).add(4);
+      hue = hue.blend(b.sub(r).div(delta).add(2), max.eq(g));
+      DoubleVector redHue = g.sub(b).div(delta);
+      redHue = redHue.blend(redHue.add(6), redHue.lt(0));
+      // the hue is below 6 apart from rounding, which the modulus of the scalar path takes to 0
+      redHue = redHue.blend(redHue.sub(6), redHue.compare(VectorOperators.GE, 6));
+      hue = hue.blend(redHue, max.eq(r)).mul(60).blend(0, gray);
+
+      DoubleVector backgroundR = toDouble(red(backgroundPixels)).div(255);
+      DoubleVector backgroundG = toDouble(green(backgroundPixels)).div(225);
+      DoubleVector backgroundB = toDouble(blue(backgroundPixels)).div(255);
+      DoubleVector backgroundLightness = backgroundR.max(backgroundG.max(backgroundB))
+              .add(backgroundR.min(backgroundG.min(backgroundB))).div(2);
+
+      DoubleVector newLightness;
+      if (screen) {
+        newLightness = lightness.neg().add(1).mul(backgroundLightness.neg().add(1)).neg().add(1);
+      } else {
+        newLightness = lightness.mul(backgroundLightness);
+      }
+
+      // blue component of the HSL to RGB conversion
+      DoubleVector k = hue.div(30).add(4);
+      k = k.blend(k.sub(12), k.compare(VectorOperators.GE, 12));
+      DoubleVector a = saturation.mul(newLightness.min(newLightness.neg().add(1)));
+      DoubleVector factor = k.sub(3).min(k.neg().add(9).min(1)).max(-1);
+      IntVector newBlue = toInt(newLightness.sub(a.mul(factor)).mul(255)).max(0).min(maxValue);
+
+      // only the red component is replaced, with the computed blue component
+      currentPixels.and(0xFF00FFFF).or(newBlue.lanewise(VectorOperators.LSHL, 16))
+              .intoArray(current, i);
+    }
+    this.scalar.blendLightness(current, background, i, offset + length - i, screen, maxValue);
+  }
+
+  /**
+   * Brightens or darkens the r, g, b components of the pixels, keeping each within bounds. As in
+   * the scalar kernel, the changed blue component is written to green and green to blue.
+   * @param argb - packed pixels.
+   * @param red - red components of the pixels.
+   * @param green - green components of the pixels.
+   * @param blue - blue components of the pixels.
+   * @param amount - value to be added or subtracted to the components of each pixel.
+   * @param brighten - true to brighten, false to darken.
+   * @param maxValue - largest value a component can be brightened to.
+   * @return the packed pixels with their new components.
+   */
+  private static IntVector changeComponent(IntVector argb, IntVector red, IntVector green,
+                                           IntVector blue, IntVector amount, boolean brighten,
+                                           int maxValue) {
+    if (brighten) {
+      red = red.add(amount).min(maxValue);
+      green = green.add(amount).min(maxValue);
+      blue = blue.add(amount).min(maxValue);
+    } else {
+      red = red.sub(amount).max(0);
+      green = green.sub(amount).max(0);
+      blue = blue.sub(amount).max(0);
+    }
+    return argb.and(0xFF000000)
+            .or(red.and(0xFF).lanewise(VectorOperators.LSHL, 16))
+            .or(blue.and(0xFF).lanewise(VectorOperators.LSHL, 8))
+            .or(green.and(0xFF));
+  }
+
+  /**
+   * Extracts the red components of packed pixels.
+   * @param argb - packed pixels.
+   * @return the red component of each pixel.
+   */
+  private static IntVector red(IntVector argb) {
+    return argb.lanewise(VectorOperators.LSHR, 16).and(0xFF);
+  }
+
+  /**
+   * Extracts the green components of packed pixels.
+   * @param argb - packed pixels.
+   * @return the green component of each pixel.
+   */
+  private static IntVector green(IntVector argb) {
+    return argb.lanewise(VectorOperators.LSHR, 8).and(0xFF);
+  }
+
+  /**
+   * Extracts the blue components of packed pixels.
+   * @param argb - packed pixels.
+   * @return the blue component of each pixel.
+   */
+  private static IntVector blue(IntVector argb) {
+    return argb.and(0xFF);
+  }
+
+  /**
+   * Converts a vector of components to doubles, one lane for each lane of the vector.
+   * @param components - components, of the DOUBLE_INTS shape.
+   * @return the components as doubles.
+   */
+  private static DoubleVector toDouble(IntVector components) {
+    return (DoubleVector) components.convertShape(VectorOperators.I2D, DOUBLES, 0);
+  }
+
+  /**
+   * Truncates a vector of double components to ints, one lane for each lane of DOUBLES.
+   * @param components - components as doubles.
+   * @return the components as ints, of the DOUBLE_INTS shape.
+   */
+  private static IntVector toInt(DoubleVector components) {
+    return (IntVector) components.convertShape(VectorOperators.D2I, DOUBLE_INTS, 0);
+  }
+}
@@ -15,6 +15,7 @@ import java.io.StringReader;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Arrays;
 
 /**
  * This program allows the user to run the program by running the main method. After running
@@ -23,11 +24,24 @@ import java.nio.file.Paths;
 public class Program {
   /**
    * Allows the user to specify what game they want to play and allows the user to play the game.
+   * The arguments may start with "-render-delay" followed by a number of milliseconds: edits
+   * coming in quicker than that are rendered together once they stop. In text mode the project is
+   * then also rendered between commands, rather than only when an image is saved.
    *
    * @param args - user input specifying the game they want to play.
    */
   public static void main(String[] args) throws IOException {
     CollageModel collageModel = new CollageModelImpl();
+    long renderDelay = -1;
+    if (args.length > 1 && args[0].equals("-render-delay")) {
+      try {
+        renderDelay = Long.parseLong(args[1]);
+      } catch (NumberFormatException e) {
+        System.out.println("Invalid Input");
+        return;
+      }
+      args = Arrays.copyOfRange(args, 2, args.length);
+    }
     if (args.length > 0) {
       Readable rd = null;
       if (args[0].equals("-file")) {
@@ -48,11 +62,13 @@ public class Program {
       }
       Appendable ap = System.out;
       CollageView view = new CollageViewImpl(collageModel, ap);
-      CollageController controller = new CollageControllerImpl(collageModel, view, rd);
+      CollageController controller = new CollageControllerImpl(collageModel, view, rd,
+              CollageControllerImpl.defaultImageCacheBytes(), renderDelay);
       controller.executeCommand();
     } else {
       CollageGUIController guiController = new CollageGUIControllerImpl(collageModel);
-      CollageGUIView collageGUIView = new CollageGUIViewImpl(guiController);
+      CollageGUIView collageGUIView = renderDelay < 0 ? new CollageGUIViewImpl(guiController)
+              : new CollageGUIViewImpl(guiController, renderDelay);
     }
 
 
@@ -1,7 +1,5 @@
 package controller;
 
-import java.awt.Color;
-import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
@@ -9,21 +7,21 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
-import java.util.ArrayList;
 import java.util.InputMismatchException;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Scanner;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicLong;
 
-import javax.imageio.ImageIO;
-
+import model.BinaryProjectFormat;
 import model.CollageModel;
-import model.Coord;
 import model.Filter;
 import model.ILayer;
 import model.IPixels;
-import model.Layer;
-import model.Pixels;
+import model.JournalProjectFormat;
+import model.RasterLayer;
 import view.CollageView;
 
 
@@ -36,6 +34,11 @@ public class CollageControllerImpl implements CollageController {
   private CollageModel model;
   private CollageView view;
   private Readable rd;
+  private final ProjectFiles projectFiles;
+  private final DecodedImageCache imageCache;
+  // counts the commands started, so a render made while waiting can tell it is out of date
+  private final AtomicLong commands;
+  private final RenderScheduler renderScheduler;
 
 
   /**
@@ -45,16 +48,77 @@ public class CollageControllerImpl implements CollageController {
    * @param rd - reads input from the user.
    */
   public CollageControllerImpl(CollageModel model, CollageView view, Readable rd) {
-    if (model == null || view == null || rd == null) {
+    this(model, view, rd, DecodedImageCache.defaultBudget());
+  }
+
+  /**
+   * Iniliazes fields. Images added to the project are kept decoded in memory, up to the given
+   * number of bytes, so adding the same image again does not decode it again.
+   * @param model - contains instructions for the program to be run.
+   * @param view - displays the status of the program to the user.
+   * @param rd - reads input from the user.
+   * @param imageCacheBytes - largest number of bytes of decoded images kept, 0 to keep none.
+   */
+  public CollageControllerImpl(CollageModel model, CollageView view, Readable rd,
+                               long imageCacheBytes) {
+    this(model, view, rd, imageCacheBytes, -1);
+  }
+
+  /**
+   * Iniliazes fields. Images added to the project are kept decoded in memory, up to the given
+   * number of bytes. When a render delay is given, the project is rendered in the background once
+   * no command has come in for that long, so a burst of commands is rendered once and a later
+   * save-image only renders what changed since. Otherwise the project is only rendered when an
+   * image is saved.
+   * @param model - contains instructions for the program to be run.
+   * @param view - displays the status of the program to the user.
+   * @param rd - reads input from the user.
+   * @param imageCacheBytes - largest number of bytes of decoded images kept, 0 to keep none.
+   * @param renderDelayMillis - time without commands after which the project is rendered, or a
+   *                          negative number to only render when an image is saved.
+   */
+  public CollageControllerImpl(CollageModel model, CollageView view, Readable rd,
+                               long imageCacheBytes, long renderDelayMillis) {
+    if (model == null || view == null || rd == null || imageCacheBytes < 0) {
       throw new IllegalArgumentException("Invalid Parameters. Given null input.");
     }
 
     this.model = model;
     this.view = view;
     this.rd = rd;
+    this.projectFiles = new ProjectFiles();
+    this.imageCache = new DecodedImageCache(imageCacheBytes);
+    this.commands = new AtomicLong();
+    this.renderScheduler = renderDelayMillis < 0 ? null
+            : new RenderScheduler(renderDelayMillis, this::renderWhileWaiting);
 
   }
 
+  /**
+   * Returns the number of bytes of decoded images kept when no budget is given.
+   * @return the default budget of the image cache.
+   */
+  public static long defaultImageCacheBytes() {
+    return DecodedImageCache.defaultBudget();
+  }
+
+  /**
+   * Renders the project while waiting for the next command. The model renders from a snapshot,
+   * so the next command does not wait for the render, which gives way as soon as a command comes
+   * in and leaves the rest of the work to the next render.
+   */
+  private void renderWhileWaiting() {
+    // a command started after this point makes the render out of date and stops it
+    long started = this.commands.get();
+    try {
+      if (!model.getLayerNames().isEmpty() && model.getWidth() > 0 && model.getHeight() > 0) {
+        model.saveImageRaster(() -> this.commands.get() != started);
+      }
+    } catch (CancellationException e) {
+      // a command came in; it is rendered along with the next ones
+    }
+  }
+
   @Override
   public void executeCommand() throws IOException {
     // scans the input from the user
@@ -66,6 +130,8 @@ public class CollageControllerImpl implements CollageController {
     renderMessageEndingWithNewLine(listOfCommandsMessage());
 
     while (s.hasNext()) {
+      // a render made while waiting for the command gives way to it
+      this.commands.incrementAndGet();
       try {
         String command = s.next();
         switch (command) {
@@ -86,6 +152,7 @@ public class CollageControllerImpl implements CollageController {
             try {
               LinkedHashMap[] projectContent = loadProjectFile(pathToProjectFile);
               model.loadProject(projectContent);
+              this.projectFiles.loaded(Paths.get(pathToProjectFile));
               renderMessageEndingWithNewLine("Project successfully loaded.");
             } catch (IllegalStateException ie) {
               renderMessageEndingWithNewLine("Currently working on a project. Quit this session " +
@@ -96,11 +163,8 @@ public class CollageControllerImpl implements CollageController {
           case "save-project":
             try {
               String filename = s.next();
-              String projectContent = model.saveProject();
               try {
-                FileWriter writeNewFile = new FileWriter(filename);
-                writeNewFile.write(projectContent);
-                writeNewFile.close();
+                this.projectFiles.save(model, Paths.get(filename));
               } catch (IOException e) {
                 throw new IOException("Unable to write to file.");
               }
@@ -148,19 +212,19 @@ public class CollageControllerImpl implements CollageController {
                   throw new Exception("Invalid x/y coords.");
                 }
 
-                int canvasHeight = model.getHeight();
-                int canvasWidth = model.getWidth();
+                // only the part of the image between its position and the canvas edges is read
+                int canvasHeight = Math.max(model.getHeight() - y, 0);
+                int canvasWidth = Math.max(model.getWidth() - x, 0);
                 int maxValue = model.maxValue();
-                ArrayList imageContent;
-
-                if (fileFormat.equals("ppm")) {
-                  imageContent = readImageFile(imageN, canvasWidth, canvasHeight,
-                          maxValue);
-                } else {
-                  imageContent =
-                          readOtherImageFile(new FileInputStream(imageN), canvasWidth,
-                                  canvasHeight, maxValue);
-                }
+                ILayer imageContent = this.imageCache.get(Paths.get(imageN), canvasWidth,
+                        canvasHeight, maxValue, () -> {
+                    if (fileFormat.equals("ppm")) {
+                      return readImageFile(imageN, canvasWidth, canvasHeight, maxValue);
+                    }
+                    try (FileInputStream in = new FileInputStream(imageN)) {
+                      return readOtherImageFile(in, canvasWidth, canvasHeight, maxValue);
+                    }
+                  });
 
                 model.addImageToLayer(layerN, imageContent, x, y, fileFormat);
                 renderMessageEndingWithNewLine("Image has been successfully added to layer " +
@@ -174,6 +238,10 @@ public class CollageControllerImpl implements CollageController {
             }
             break;
 
+          case "image-cache-stats":
+            renderMessageEndingWithNewLine("Image cache: " + this.imageCache);
+            break;
+
           case "set-filter":
             try {
               String layer = s.next();
@@ -188,8 +256,8 @@ public class CollageControllerImpl implements CollageController {
           case "save-image":
             try {
               String fileName = s.next();
-              ArrayList projectContent = model.saveImage();
               if (this.model.getFileExtension().equals("ppm")) {
+                List projectContent = model.saveImage();
                 try {
                   String writeContent = getPixelContent(projectContent,
                           model.getHeight(), model.getWidth(), model.maxValue());
@@ -200,7 +268,7 @@ public class CollageControllerImpl implements CollageController {
                   throw new IOException("Unable to write to file.");
                 }
               } else {
-                saveOtherImage(projectContent, fileName);
+                saveOtherImage(fileName);
               }
 
               renderMessageEndingWithNewLine("Image has been successfully saved.");
@@ -219,6 +287,9 @@ public class CollageControllerImpl implements CollageController {
           return;
         }
       }
+      if (this.renderScheduler != null) {
+        this.renderScheduler.requestRender();
+      }
     }
   }
 
@@ -241,8 +312,10 @@ public class CollageControllerImpl implements CollageController {
     return "The following is a list of commands that are supported by this program: \n" +
             "- To create a new project (new-project canvas-height canvas-width) \n" +
             "- To load an existing project (load-project 'path-to-project-file') \n" +
-            "- To save a project (save-project) \n" +
+            "- To save a project (save-project file-name), a name ending in .c2 saves in the " +
+            "binary format, a name ending in .cj saves only the changes since the last save \n" +
             "- To add a new layer to the project (add-layer layer-name) \n" +
+            "- To show how often added images were served from memory (image-cache-stats) \n" +
             "- To filter a specific layer (set-filter layer-name filter-option) \n" +
             "  Filter Option can be one of: " +
             "   - normal \n" +
@@ -293,7 +366,8 @@ public class CollageControllerImpl implements CollageController {
 
   /**
    * Stores the layer names, pixel contnet and content of the project after reading from a collage
-   * file.
+   * file. Binary projects are read through {@link BinaryProjectFormat}, journaled projects through
+   * {@link JournalProjectFormat}, any other file as C1 text with its layers decoded in parallel.
    * @param filename - name of the collage file.
    * @return - List of LinkedHashMaps which contains layers, pixel content and project height and
    *         width from the loaded project.
@@ -301,61 +375,19 @@ public class CollageControllerImpl implements CollageController {
    *                                  invalid.
    */
   private LinkedHashMap[] loadProjectFile(String filename) throws IllegalArgumentException {
-    LinkedHashMap<String, Integer> canvasContent = new LinkedHashMap<>();
-    LinkedHashMap<String, ILayer> projectContentMap = new LinkedHashMap<>();
-    Scanner sc;
-
     try {
-      sc = new Scanner(new FileInputStream(filename));
-    }
-    catch (FileNotFoundException e) {
-      throw new IllegalArgumentException("File " + filename + " not found!");
-    }
-
-    String token;
-
-    token = sc.next();
-    if (!token.equals("C1")) {
-      throw new IllegalArgumentException("Invalid Collage file: plain RAW file should begin with " +
-              "C1");
-    }
-
-    int width = sc.nextInt();
-    int height = sc.nextInt();
-    int maxValue = sc.nextInt();
-
-    canvasContent.put("width", width);
-    canvasContent.put("height", height);
-    canvasContent.put("maxValue", maxValue);
-
-
-    while (sc.hasNext()) {
-      String layerName = sc.next();
-      Filter filterOption = stringToFilterOption(sc.next());
-      ArrayList pixels = new ArrayList();
-
-      for (int h = 0; h < height; h++) {
-        ArrayList pixelList = new ArrayList();
-        for (int w = 0; w < width; w++) {
-          if (!sc.hasNextInt()) {
-            break;
-          }
-          int r = sc.nextInt();
-          int g = sc.nextInt();
-          int b = sc.nextInt();
-          int a = sc.nextInt();
-          pixelList.add(new Pixels(new Coord(h, w), r, g, b, a));
-        }
-        pixels.add(pixelList);
+      if (BinaryProjectFormat.isBinaryProject(Paths.get(filename))) {
+        return BinaryProjectFormat.read(Paths.get(filename));
       }
-
-      projectContentMap.put(layerName, new Layer(filterOption, pixels));
+      if (JournalProjectFormat.isJournalProject(Paths.get(filename))) {
+        return JournalProjectFormat.read(Paths.get(filename));
+      }
+      return TextProjectReader.read(Paths.get(filename),
+              Runtime.getRuntime().availableProcessors());
+    } catch (IOException e) {
+      throw new IllegalArgumentException("File " + filename + " not found!");
     }
 
-    LinkedHashMap[] projectContent = {canvasContent, projectContentMap};
-
-    return projectContent;
-
   }
 
 
@@ -365,141 +397,29 @@ public class CollageControllerImpl implements CollageController {
    * @param canvasWidth - project width.
    * @param canvasHeight - project height.
    * @param maxValue - project max value.
-   * @return - An ArrayList containing the image's content.
+   * @return - A layer containing the image's content.
    * @throws IllegalArgumentException - if the file is not of proper format.
    */
-  private ArrayList readImageFile(String filename, int canvasWidth, int canvasHeight, int maxValue)
-          throws IllegalArgumentException {
-    Scanner sc;
-
-    try {
-      sc = new Scanner(new FileInputStream(filename));
-    }
-    catch (FileNotFoundException e) {
+  private RasterLayer readImageFile(String filename, int canvasWidth, int canvasHeight,
+                                    int maxValue) throws IllegalArgumentException {
+    try (FileInputStream is = new FileInputStream(filename)) {
+      return PPMReader.read(is, canvasWidth, canvasHeight, maxValue);
+    } catch (FileNotFoundException e) {
       throw new IllegalArgumentException("File " + filename + " not found!");
+    } catch (IOException e) {
+      throw new IllegalArgumentException("Unable to read file " + filename);
     }
-
-    String token;
-
-    token = sc.next();
-    if (!token.equals("P3")) {
-      throw new IllegalArgumentException("Invalid Collage file: plain RAW file should begin with "
-              + "P3");
-    }
-
-    int width = sc.nextInt();
-    int height =  sc.nextInt();
-    sc.nextInt();
-    ArrayList pixels = new ArrayList();
-
-
-
-    for (int h = 0; h < canvasHeight; h++) {
-      ArrayList pixelList = new ArrayList();
-      for (int w = 0; w < canvasWidth; w++) {
-
-        if (w < width && h < height) {
-          int r = sc.nextInt();
-          int g = sc.nextInt();
-          int b = sc.nextInt();
-          pixelList.add(new Pixels(new Coord(h,w), r, g, b, maxValue));
-        } else {
-          pixelList.add(new Pixels(new Coord(h,w), maxValue, maxValue, maxValue, maxValue));
-        }
-      }
-      pixels.add(pixelList);
-    }
-    return pixels;
   }
 
   /**
-   * Saves an image file of a formath that is different from a ppm file.
-   * @param projectContent - ArrayList of pixels representing the content of the project.
+   * Saves an image file of a formath that is different from a ppm file. The rendered pixels are
+   * handed to ImageIO without being copied.
    * @param fileName - file name for the image to be saved on.
    * @throws IOException - if unable to write to file.
    */
-  private void saveOtherImage(ArrayList<ArrayList<Pixels>> projectContent,
-                              String fileName) throws IOException {
-
-    int width = model.getWidth();
-    int height = model.getHeight();
-    BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
-
-    // Set the color of each pixel in the image using its RGB value
-    for (int x = 0; x < width; x++) {
-      for (int y = 0; y < height; y++) {
-        int r = projectContent.get(x).get(y).getRedComponent();
-        int g = projectContent.get(x).get(y).getGreenComponent();
-        int b = projectContent.get(x).get(y).getBlueComponent();
-        int rgb = (r << 16) | (g << 8) | b;
-        image.setRGB(x, y, rgb);
-      }
-    }
-
-    // Save the image to a file
-    File file = new File(fileName);
-    try {
-      ImageIO.write(image, model.getFileExtension(), file);
-    } catch (IOException e) {
-      throw new IOException("Unable to write to file");
-    }
-
-  }
-
-  /**
-   * represents the StringToFiterOption method.
-   * @param filterCommand string for filter command.
-   * @return Filter.
-   */
-  private static Filter stringToFilterOption(String filterCommand) {
-    for (Filter fil : Filter.values()) {
-      if (fil.getValue().equals(filterCommand)) {
-        return fil;
-      }
-    }
-    throw new IllegalArgumentException("Filter does not exist");
-  }
-
-  /**
-   * represents the readImage file method.
-   * @param canvasWidth the desired width of the canvas.
-   * @param canvasHeight the desired heigh of the canvas.
-   * @param maxValue the maximum value.
-   * @return ArrayList.
-   * @throws IllegalArgumentException throws exception when file is not found.
-   */
-  private static ArrayList readPPMImageFile(FileInputStream fileInputStream,
-                                            int canvasWidth, int canvasHeight, int maxValue) throws
-          IllegalArgumentException {
-    try (Scanner sc = new Scanner(fileInputStream)) {
-      String token;
-      token = sc.next();
-      if (!token.equals("P3")) {
-        throw new IllegalArgumentException("Invalid Collage file:" +
-                " plain RAW file should begin with " + "P3");
-      }
-      int width = sc.nextInt();
-      int height = sc.nextInt();
-      sc.nextInt();
-      ArrayList pixels = new ArrayList();
-
-      for (int h = 0; h < canvasHeight; h++) {
-        ArrayList pixelList = new ArrayList();
-        for (int w = 0; w < canvasWidth; w++) {
-
-          if (w < width && h < height) {
-            int r = sc.nextInt();
-            int g = sc.nextInt();
-            int b = sc.nextInt();
-            pixelList.add(new Pixels(new Coord(h, w), r, g, b, maxValue));
-          } else {
-            pixelList.add(new Pixels(new Coord(h, w), maxValue, maxValue, maxValue, maxValue));
-          }
-        }
-        pixels.add(pixelList);
-      }
-      return pixels;
-    }
+  private void saveOtherImage(String fileName) throws IOException {
+    ImageRasterWriter.write(model.saveImageRaster(), model.getWidth(), model.getHeight(),
+            model.getFileExtension(), new File(fileName));
   }
 
   /**
@@ -507,36 +427,13 @@ public class CollageControllerImpl implements CollageController {
    * @param canvasWidth the desired width of the canvas.
    * @param canvasHeight the desired height of the canvas.
    * @param maxValue the maximum value.
-   * @return ArrayList.
+   * @return RasterLayer.
    * @throws IllegalArgumentException throws exception when file is not found.
    */
-  private static ArrayList readOtherImageFile(FileInputStream fileInputStream, int canvasWidth,
+  private static RasterLayer readOtherImageFile(FileInputStream fileInputStream, int canvasWidth,
                                              int canvasHeight, int maxValue) throws
           IllegalArgumentException, IOException {
-    BufferedImage image = ImageIO.read(fileInputStream);
-    // Get the width and height of the image
-    int width = image.getWidth();
-    int height = image.getHeight();
-    ArrayList pixels = new ArrayList();
-
-    for (int h = 0; h < canvasHeight; h++) {
-      ArrayList pixelList = new ArrayList();
-      for (int w = 0; w < canvasWidth; w++) {
-
-        if (w < width && h < height) {
-          int rgb = image.getRGB(h, w);
-          Color color = new Color(rgb);
-          int r = color.getRed();
-          int g = color.getGreen();
-          int b = color.getBlue();
-          pixelList.add(new Pixels(new Coord(h, w), r, g, b, maxValue));
-        } else {
-          pixelList.add(new Pixels(new Coord(h, w), maxValue, maxValue, maxValue, maxValue));
-        }
-      }
-      pixels.add(pixelList);
-    }
-    return pixels;
+    return ImageRasterReader.read(fileInputStream, canvasWidth, canvasHeight, maxValue);
   }
 
   /**
@@ -547,7 +444,7 @@ public class CollageControllerImpl implements CollageController {
    * @param maxValue - max value of the project.
    * @return - a String in ppm format with all the rgb values.
    */
-  private static String getPixelContent(ArrayList<ArrayList<IPixels>> pixelList, int height,
+  private static String getPixelContent(List<List<IPixels>> pixelList, int height,
                                        int width, int maxValue) {
     String pixelListToString = "";
     pixelListToString += "P3\n";
@@ -2,6 +2,8 @@ package controller;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.concurrent.CancellationException;
+import java.util.function.BooleanSupplier;
 
 /**
  * Represents the interface for the controller of the Graphical User
@@ -28,6 +30,36 @@ public interface CollageGUIController {
    */
   void saveImage(File imageFileToSave) throws IOException;
 
+  /**
+   * Renders the project for display. Only the pixels that changed since the last render are
+   * copied into the preview pyramid, and averaged up through its smaller levels. The same pyramid
+   * is returned until the size of the canvas changes.
+   *
+   * @return the preview pyramid of the project, or null if there is no project to render.
+   */
+  PreviewPyramid renderPreview();
+
+  /**
+   * Renders the project for display, as {@link #renderPreview()} does, from any thread. The render
+   * gives up once it is cancelled or once another thread starts changing the project, since its
+   * result would be out of date.
+   *
+   * @param cancelled - tells whether the render is no longer wanted.
+   * @return the preview pyramid of the project, or null if there is no project to render.
+   * @throws CancellationException - if the render gave up.
+   */
+  PreviewPyramid renderPreview(BooleanSupplier cancelled) throws CancellationException;
+
+  /**
+   * Renders a quick draft of the project into a smaller level of the preview pyramid, sampling
+   * every pixel of the layers at that level's scale, so an edit to a large project can be seen
+   * before the full render is done. No draft is made for canvases small enough to render quickly
+   * or when the project has not been edited since it was last rendered.
+   *
+   * @return the preview pyramid holding the draft, or null if no draft was made.
+   */
+  PreviewPyramid renderDraft();
+
   /**
    * Loads a project to the program.
    * @param projectFile - Contains the height, the width, and the max value, the layers and the
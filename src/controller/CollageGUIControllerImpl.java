@@ -1,41 +1,75 @@
 package controller;
 
+import model.BinaryProjectFormat;
 import model.CollageModel;
-import model.Coord;
 import model.Filter;
 import model.ILayer;
 import model.IPixels;
-import model.Layer;
-import model.Pixels;
+import model.JournalProjectFormat;
+import model.RasterLayer;
 
-import java.awt.Color;
-import java.awt.image.BufferedImage;
+import java.awt.Rectangle;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.LinkedHashMap;
-import java.util.Scanner;
-
-import javax.imageio.ImageIO;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
 
 /**
  * Represents the implementation of te GUIController. includes all
  *  * method implementations that can be performed through the graphical user interface.
  */
 public class CollageGUIControllerImpl implements CollageGUIController {
+  // canvases larger than this render slowly enough to be shown as a draft first
+  private static final long DRAFT_CANVAS_PIXELS = 1L << 22;
+  // most pixels sampled for a draft, few enough to be rendered within a frame or two
+  private static final long DRAFT_PIXELS = 1L << 18;
   private CollageModel model;
+  // the model can be edited while a preview renders off the event thread; this lock keeps renders
+  // and the preview pyramid to one thread at a time
+  private final Object previewLock;
+  // counts the changes started, so a preview render can tell it has become out of date
+  private final AtomicLong changes;
+  private final ProjectFiles projectFiles;
+  private final DecodedImageCache imageCache;
+  private PreviewPyramid pyramid;
+  // part of the canvas rendered since the pyramid was last brought up to date
+  private Rectangle unpreviewed;
+  // true when the project has been edited since the preview was last fully rendered
+  private final AtomicBoolean edited;
 
   /**
    * Constructor for CollageGUIControllerImpl. initializes the model.
    * @param model represents the model.
    */
   public CollageGUIControllerImpl(CollageModel model) {
+    this(model, DecodedImageCache.defaultBudget());
+  }
+
+  /**
+   * Constructor for CollageGUIControllerImpl. initializes the model. Images added to the project
+   * are kept decoded in memory, up to the given number of bytes, so adding the same image again
+   * does not decode it again.
+   * @param model represents the model.
+   * @param imageCacheBytes largest number of bytes of decoded images kept, 0 to keep none.
+   */
+  public CollageGUIControllerImpl(CollageModel model, long imageCacheBytes) {
     if (model == null) {
       throw new IllegalArgumentException("Invalid Parameters. Given model is null.");
     }
     this.model = model;
+    this.previewLock = new Object();
+    this.changes = new AtomicLong();
+    this.projectFiles = new ProjectFiles();
+    this.imageCache = new DecodedImageCache(imageCacheBytes);
+    this.pyramid = null;
+    this.unpreviewed = new Rectangle();
+    this.edited = new AtomicBoolean(false);
   }
 
   @Override
@@ -43,23 +77,41 @@ public class CollageGUIControllerImpl implements CollageGUIController {
     if (height < 0 || width < 0) {
       throw new IllegalArgumentException("Invalid Height and Width Arguments.");
     }
+    this.changes.incrementAndGet();
     model.newProject(height, width);
+    this.edited.set(true);
   }
 
   @Override
   public void saveProject(File projectFileToSave) throws IOException {
-    String projectContent = model.saveProject();
-    try (FileWriter writeNewFile = new FileWriter(projectFileToSave)) {
-      writeNewFile.write(projectContent);
-    } catch (IOException e) {
-      throw new IOException("Unable to write to file.");
+    // the model writes the project from a snapshot, so a preview render carries on meanwhile
+    synchronized (this.projectFiles) {
+      try {
+        this.projectFiles.save(model, projectFileToSave.toPath());
+      } catch (IOException e) {
+        throw new IOException("Unable to write to file.");
+      }
     }
   }
 
   @Override
   public void saveImage(File imageFileToSave) throws IOException {
-    ArrayList projectContent = model.saveImage();
+    // saving renders the image too, so a preview render in flight gives way to it
+    this.changes.incrementAndGet();
+    synchronized (this.previewLock) {
+      saveImageLocked(imageFileToSave);
+    }
+  }
+
+  /**
+   * Saves the rendered image while holding the preview lock.
+   * @param imageFileToSave - file the image is saved to.
+   * @throws IOException - if unable to write to file.
+   */
+  private void saveImageLocked(File imageFileToSave) throws IOException {
     if (this.model.getFileExtension().equals("ppm")) {
+      List projectContent = model.saveImage();
+      rendered();
       try {
         String writeContent = getPixelContent(projectContent,
                 model.getHeight(), model.getWidth(), model.maxValue());
@@ -70,7 +122,89 @@ public class CollageGUIControllerImpl implements CollageGUIController {
         throw new IOException("Unable to write to file.");
       }
     } else {
-      saveOtherImage(projectContent, imageFileToSave.getName());
+      saveOtherImage(imageFileToSave.getName());
+    }
+  }
+
+  @Override
+  public PreviewPyramid renderPreview() {
+    return renderPreview(() -> false);
+  }
+
+  @Override
+  public PreviewPyramid renderPreview(BooleanSupplier cancelled) throws CancellationException {
+    synchronized (this.previewLock) {
+      // a change started after this point makes the render out of date and stops it
+      long started = this.changes.get();
+      boolean wasEdited = this.edited.getAndSet(false);
+      int width = model.getWidth();
+      int height = model.getHeight();
+      if (model.getLayerNames().isEmpty() || width == 0 || height == 0) {
+        return null;
+      }
+      int[] raster;
+      try {
+        raster = model.saveImageRaster(
+                () -> cancelled.getAsBoolean() || this.changes.get() != started);
+      } catch (CancellationException e) {
+        if (wasEdited) {
+          this.edited.set(true);
+        }
+        throw e;
+      }
+      rendered();
+      PreviewPyramid pyramid = pyramidFor(width, height);
+      pyramid.update(raster, this.unpreviewed);
+      this.unpreviewed = new Rectangle();
+      return pyramid;
+    }
+  }
+
+  @Override
+  public PreviewPyramid renderDraft() {
+    synchronized (this.previewLock) {
+      int width = model.getWidth();
+      int height = model.getHeight();
+      if (!this.edited.get() || model.getLayerNames().isEmpty()
+              || (long) width * height <= DRAFT_CANVAS_PIXELS) {
+        return null;
+      }
+      PreviewPyramid pyramid = pyramidFor(width, height);
+      int level = 1;
+      while (level + 1 < pyramid.getLevelCount()
+              && (long) (width >> level) * (height >> level) > DRAFT_PIXELS) {
+        level++;
+      }
+      pyramid.draft(level, model.saveSubsampledImageRaster(1 << level));
+      return pyramid;
+    }
+  }
+
+  /**
+   * Returns the preview pyramid, replacing it when the canvas has changed size.
+   * @param width - width of the canvas.
+   * @param height - height of the canvas.
+   * @return the preview pyramid for the canvas.
+   */
+  private PreviewPyramid pyramidFor(int width, int height) {
+    if (this.pyramid == null || this.pyramid.getWidth() != width
+            || this.pyramid.getHeight() != height) {
+      this.pyramid = new PreviewPyramid(width, height);
+      this.unpreviewed = new Rectangle(0, 0, width, height);
+    }
+    return this.pyramid;
+  }
+
+  /**
+   * Records the part of the canvas changed by the render that just happened, so the preview
+   * pyramid picks it up even when the render was made to save an image.
+   */
+  private void rendered() {
+    Rectangle region = model.getLastRenderedRegion();
+    if (this.unpreviewed.isEmpty()) {
+      this.unpreviewed = region;
+    } else if (!region.isEmpty()) {
+      this.unpreviewed = this.unpreviewed.union(region);
     }
   }
 
@@ -78,12 +212,19 @@ public class CollageGUIControllerImpl implements CollageGUIController {
   public void loadProject(File projectFile) throws IllegalStateException,
           IllegalArgumentException {
     LinkedHashMap[] projectContent = loadProjectContent(projectFile);
-    model.loadProject(projectContent);
+    this.changes.incrementAndGet();
+    synchronized (this.projectFiles) {
+      model.loadProject(projectContent);
+      this.projectFiles.loaded(projectFile.toPath());
+    }
+    this.edited.set(true);
   }
 
   @Override
   public void addLayer(String layerName) throws IllegalStateException, IllegalArgumentException {
+    this.changes.incrementAndGet();
     model.addLayer(layerName);
+    this.edited.set(true);
   }
 
   @Override
@@ -93,132 +234,68 @@ public class CollageGUIControllerImpl implements CollageGUIController {
     if (xPos < 0 || yPos < 0) {
       throw new IllegalArgumentException("Invalid x/y coords.");
     }
-    int canvasHeight = model.getHeight();
-    int canvasWidth = model.getWidth();
+    this.changes.incrementAndGet();
+    // only the part of the image between its position and the canvas edges is read
+    int canvasHeight = Math.max(model.getHeight() - yPos, 0);
+    int canvasWidth = Math.max(model.getWidth() - xPos, 0);
     int maxValue = model.maxValue();
 
-    ArrayList imageContent =
-            readImageFile(imageToAdd, canvasWidth, canvasHeight, maxValue);
+    ILayer imageContent;
+    try {
+      imageContent = this.imageCache.get(imageToAdd.toPath(), canvasWidth, canvasHeight,
+              maxValue, () -> readImageFile(imageToAdd, canvasWidth, canvasHeight, maxValue));
+    } catch (IOException e) {
+      throw new IllegalArgumentException("File " + imageToAdd.getName() + " not found!");
+    }
     model.addImageToLayer(layerName, imageContent, xPos, yPos, "ppm");
+    this.edited.set(true);
   }
 
 
   @Override
   public void setFilterToLayer(String filterName, String layerName)
           throws IllegalArgumentException {
+    this.changes.incrementAndGet();
     model.setFilter(layerName, filterName);
+    this.edited.set(true);
   }
 
-  private void saveOtherImage(ArrayList<ArrayList<Pixels>> projectContent,
-                              String fileName) throws IOException {
-
-    int width = model.getWidth();
-    int height = model.getHeight();
-    BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
-
-    // Set the color of each pixel in the image using its RGB value
-    for (int x = 0; x < width; x++) {
-      for (int y = 0; y < height; y++) {
-        int r = projectContent.get(x).get(y).getRedComponent();
-        int g = projectContent.get(x).get(y).getGreenComponent();
-        int b = projectContent.get(x).get(y).getBlueComponent();
-        int rgb = (r << 16) | (g << 8) | b;
-        image.setRGB(x, y, rgb);
-      }
-    }
-
-    // Save the image to a file
-    File file = new File(fileName);
-    try {
-      ImageIO.write(image, model.getFileExtension(), file);
-    } catch (IOException e) {
-      throw new IOException("Unable to write to file");
-    }
-
+  /**
+   * Saves an image file of a format that is different from a ppm file. The rendered pixels are
+   * handed to ImageIO without being copied.
+   * @param fileName - file name for the image to be saved on.
+   * @throws IOException - if unable to write to file.
+   */
+  private void saveOtherImage(String fileName) throws IOException {
+    int[] raster = model.saveImageRaster();
+    rendered();
+    ImageRasterWriter.write(raster, model.getWidth(), model.getHeight(),
+            model.getFileExtension(), new File(fileName));
   }
 
   /**
-   * represents the load project file method. loads the project content.
+   * represents the load project file method. loads the project content. Binary projects are read
+   * through {@link BinaryProjectFormat}, journaled projects through {@link JournalProjectFormat},
+   * any other file as C1 text with its layers decoded in parallel.
    * @param file File to be laoded.
    * @throws IllegalArgumentException throws exception when file is not found.
    */
   private static LinkedHashMap[] loadProjectContent(File file) throws IllegalArgumentException {
-    try (FileInputStream is = new FileInputStream(file)) {
-      return loadProjectContent(is);
+    try {
+      if (BinaryProjectFormat.isBinaryProject(file.toPath())) {
+        return BinaryProjectFormat.read(file.toPath());
+      }
+      if (JournalProjectFormat.isJournalProject(file.toPath())) {
+        return JournalProjectFormat.read(file.toPath());
+      }
     } catch (IOException e) {
       throw new IllegalArgumentException("File " + file.getName() + " not found!");
     }
-  }
-
-  /**
-   * represents the load project content method. loads the project content.
-   * @param projectFileStream prject file stream.
-   * @return LinkedHashMap[].
-   * @throws IllegalArgumentException throws exception when file is not beginning with c1.
-   */
-  private static LinkedHashMap[] loadProjectContent(FileInputStream projectFileStream)
-          throws IllegalArgumentException {
-    LinkedHashMap<String, Integer> canvasContent = new LinkedHashMap<>();
-    LinkedHashMap<String, ILayer> projectContentMap = new LinkedHashMap<>();
-    Scanner sc = new Scanner(projectFileStream);
-    String token;
-
-    token = sc.next();
-    if (!token.equals("C1")) {
-      throw new IllegalArgumentException("Invalid Collage file: plain RAW file should begin with "
-              + "C1");
-    }
-
-    int width = sc.nextInt();
-    int height = sc.nextInt();
-    int maxValue = sc.nextInt();
-
-    canvasContent.put("width", width);
-    canvasContent.put("height", height);
-    canvasContent.put("maxValue", maxValue);
-
-
-    while (sc.hasNext()) {
-      String layerName = sc.next();
-      Filter filterOption = stringToFilterOption(sc.next());
-      ArrayList pixels = new ArrayList();
-
-      for (int h = 0; h < height; h++) {
-        ArrayList pixelList = new ArrayList();
-        for (int w = 0; w < width; w++) {
-          if (!sc.hasNextInt()) {
-            break;
-          }
-          int r = sc.nextInt();
-          int g = sc.nextInt();
-          int b = sc.nextInt();
-          int a = sc.nextInt();
-          pixelList.add(new Pixels(new Coord(h, w), r, g, b, a));
-        }
-        pixels.add(pixelList);
-      }
-
-      projectContentMap.put(layerName, new Layer(filterOption, pixels));
-    }
-
-    LinkedHashMap[] projectContent = {canvasContent, projectContentMap};
-
-    return projectContent;
-
-  }
-
-  /**
-   * represents the StringToFiterOption method.
-   * @param filterCommand string for filter command.
-   * @return Filter.
-   */
-  private static Filter stringToFilterOption(String filterCommand) {
-    for (Filter fil : Filter.values()) {
-      if (fil.getValue().equals(filterCommand)) {
-        return fil;
-      }
+    try {
+      return TextProjectReader.read(file.toPath(), Runtime.getRuntime().availableProcessors());
+    } catch (IOException e) {
+      throw new IllegalArgumentException("File " + file.getName() + " not found!");
     }
-    throw new IllegalArgumentException("Filter does not exist");
   }
 
   /**
@@ -226,10 +303,10 @@ public class CollageGUIControllerImpl implements CollageGUIController {
    * @param canvasWidth the desired width of the canvas.
    * @param canvasHeight the desired heigh of the canvas.
    * @param maxValue the maximum value.
-   * @return ArrayList.
+   * @return RasterLayer.
    * @throws IllegalArgumentException throws exception when file is not found.
    */
-  private static ArrayList readImageFile(File file, int canvasWidth
+  private static RasterLayer readImageFile(File file, int canvasWidth
           , int canvasHeight, int maxValue) throws
           IllegalArgumentException {
     String fileName = file.getName();
@@ -252,95 +329,30 @@ public class CollageGUIControllerImpl implements CollageGUIController {
    * @param canvasWidth the desired width of the canvas.
    * @param canvasHeight the desired heigh of the canvas.
    * @param maxValue the maximum value.
-   * @return ArrayList.
+   * @return RasterLayer.
    * @throws IllegalArgumentException throws exception when file is not found.
    */
-  private static ArrayList readImageFile(FileInputStream fileInputStream,
+  private static RasterLayer readImageFile(FileInputStream fileInputStream,
                                          int canvasWidth, int canvasHeight, int maxValue,
                                          String ext) throws IllegalArgumentException, IOException {
     if (ext.equalsIgnoreCase("ppm")) {
-      return readPPMImageFile(fileInputStream, canvasWidth, canvasHeight, maxValue);
+      return PPMReader.read(fileInputStream, canvasWidth, canvasHeight, maxValue);
     }
     return readOtherImageFile(fileInputStream, canvasWidth, canvasHeight, maxValue);
   }
 
-  /**
-   * represents the readImage file method.
-   * @param canvasWidth the desired width of the canvas.
-   * @param canvasHeight the desired heigh of the canvas.
-   * @param maxValue the maximum value.
-   * @return ArrayList.
-   * @throws IllegalArgumentException throws exception when file is not found.
-   */
-  private static ArrayList readPPMImageFile(FileInputStream fileInputStream,
-                                            int canvasWidth, int canvasHeight, int maxValue) throws
-          IllegalArgumentException {
-    try (Scanner sc = new Scanner(fileInputStream)) {
-      String token;
-      token = sc.next();
-      if (!token.equals("P3")) {
-        throw new IllegalArgumentException("Invalid Collage file:" +
-                " plain RAW file should begin with " + "P3");
-      }
-      int width = sc.nextInt();
-      int height = sc.nextInt();
-      sc.nextInt();
-      ArrayList pixels = new ArrayList();
-
-      for (int h = 0; h < canvasHeight; h++) {
-        ArrayList pixelList = new ArrayList();
-        for (int w = 0; w < canvasWidth; w++) {
-
-          if (w < width && h < height) {
-            int r = sc.nextInt();
-            int g = sc.nextInt();
-            int b = sc.nextInt();
-            pixelList.add(new Pixels(new Coord(h, w), r, g, b, maxValue));
-          } else {
-            pixelList.add(new Pixels(new Coord(h, w), maxValue, maxValue, maxValue, maxValue));
-          }
-        }
-        pixels.add(pixelList);
-      }
-      return pixels;
-    }
-  }
-
   /**
    * represents the readImage file method.
    * @param canvasWidth the desired width of the canvas.
    * @param canvasHeight the desired height of the canvas.
    * @param maxValue the maximum value.
-   * @return ArrayList.
+   * @return RasterLayer.
    * @throws IllegalArgumentException throws exception when file is not found.
    */
-  public static ArrayList readOtherImageFile(FileInputStream fileInputStream, int canvasWidth,
+  public static RasterLayer readOtherImageFile(FileInputStream fileInputStream, int canvasWidth,
                                              int canvasHeight, int maxValue) throws
           IllegalArgumentException, IOException {
-    BufferedImage image = ImageIO.read(fileInputStream);
-    // Get the width and height of the image
-    int width = image.getWidth();
-    int height = image.getHeight();
-    ArrayList pixels = new ArrayList();
-
-    for (int h = 0; h < canvasHeight; h++) {
-      ArrayList pixelList = new ArrayList();
-      for (int w = 0; w < canvasWidth; w++) {
-
-        if (w < width && h < height) {
-          int rgb = image.getRGB(h, w);
-          Color color = new Color(rgb);
-          int r = color.getRed();
-          int g = color.getGreen();
-          int b = color.getBlue();
-          pixelList.add(new Pixels(new Coord(h, w), r, g, b, maxValue));
-        } else {
-          pixelList.add(new Pixels(new Coord(h, w), maxValue, maxValue, maxValue, maxValue));
-        }
-      }
-      pixels.add(pixelList);
-    }
-    return pixels;
+    return ImageRasterReader.read(fileInputStream, canvasWidth, canvasHeight, maxValue);
   }
 
   /**
@@ -351,7 +363,7 @@ public class CollageGUIControllerImpl implements CollageGUIController {
    * @param maxValue - max value of the project.
    * @return - a String in ppm format with all the rgb values.
    */
-  public static String getPixelContent(ArrayList<ArrayList<IPixels>> pixelList, int height,
+  public static String getPixelContent(List<List<IPixels>> pixelList, int height,
                                        int width, int maxValue) {
     String pixelListToString = "";
     pixelListToString += "P3\n";
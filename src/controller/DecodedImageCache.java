@@ -0,0 +1,212 @@
+package controller;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+import model.RasterLayer;
+
+/**
+ * Keeps recently imported images decoded in memory, so that adding the same image again does not
+ * read and decode the file again. Images are keyed by the path of their file, its size and last
+ * modification time, the part of the canvas they are read for and the project's max value, so a
+ * file changed on disk or an image placed somewhere else is decoded again. Once the decoded images
+ * take more than the byte budget, the least recently used ones are dropped.
+ * The cached layers are shared between every import of the same image and must not be changed.
+ */
+class DecodedImageCache {
+
+  /**
+   * Decodes an image when it is not found in the cache.
+   */
+  interface Decoder {
+
+    /**
+     * Decodes the image.
+     * @return a layer holding the decoded image.
+     * @throws IOException - if the image cannot be read.
+     */
+    RasterLayer decode() throws IOException;
+  }
+
+  private final long budget;
+  private final LinkedHashMap<ImageKey, RasterLayer> images;
+  private long bytes;
+  private long hits;
+  private long misses;
+  private long evictions;
+
+  /**
+   * Returns the budget used when none is given: a quarter of the memory available to the program,
+   * at most 256 MiB.
+   * @return the default budget in bytes.
+   */
+  static long defaultBudget() {
+    return Math.min(256L << 20, Runtime.getRuntime().maxMemory() / 4);
+  }
+
+  /**
+   * Initializes an empty cache.
+   * @param budget - largest number of bytes of decoded pixels kept, 0 to keep none.
+   * @throws IllegalArgumentException - if the budget is negative.
+   */
+  DecodedImageCache(long budget) throws IllegalArgumentException {
+    if (budget < 0) {
+      throw new IllegalArgumentException("Cache budget cannot be negative.");
+    }
+    this.budget = budget;
+    this.images = new LinkedHashMap<ImageKey, RasterLayer>(16, 0.75f, true);
+    this.bytes = 0;
+    this.hits = 0;
+    this.misses = 0;
+    this.evictions = 0;
+  }
+
+  /**
+   * Returns the decoded image of a file, decoding it if it is not cached.
+   * @param file - image file.
+   * @param canvasWidth - width of the part of the canvas the image is read for.
+   * @param canvasHeight - height of the part of the canvas the image is read for.
+   * @param maxValue - max value of the project.
+   * @param decoder - decodes the image when it is not cached.
+   * @return a layer holding the decoded image.
+   * @throws IOException - if the file cannot be read.
+   */
+  RasterLayer get(Path file, int canvasWidth, int canvasHeight, int maxValue, Decoder decoder)
+          throws IOException {
+    BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+    ImageKey key = new ImageKey(file.toAbsolutePath().normalize().toString(), attributes.size(),
+            attributes.lastModifiedTime().toMillis(), canvasWidth, canvasHeight, maxValue);
+    synchronized (this) {
+      RasterLayer image = this.images.get(key);
+      if (image != null) {
+        this.hits++;
+        return image;
+      }
+      this.misses++;
+    }
+
+    // decoding happens outside the lock so other images can be served meanwhile
+    RasterLayer image = decoder.decode();
+    long size = (long) image.getRaster().length * Integer.BYTES;
+    synchronized (this) {
+      if (size <= this.budget && !this.images.containsKey(key)) {
+        this.images.put(key, image);
+        this.bytes += size;
+        evict();
+      }
+    }
+    return image;
+  }
+
+  /**
+   * Drops the least recently used images until the cache fits its budget.
+   */
+  private void evict() {
+    Iterator<Map.Entry<ImageKey, RasterLayer>> eldest = this.images.entrySet().iterator();
+    while (this.bytes > this.budget && eldest.hasNext()) {
+      this.bytes -= (long) eldest.next().getValue().getRaster().length * Integer.BYTES;
+      eldest.remove();
+      this.evictions++;
+    }
+  }
+
+  /**
+   * Drops every cached image. The statistics are kept.
+   */
+  synchronized void clear() {
+    this.images.clear();
+    this.bytes = 0;
+  }
+
+  /**
+   * Returns the number of imports served from the cache.
+   * @return the number of hits.
+   */
+  synchronized long getHits() {
+    return this.hits;
+  }
+
+  /**
+   * Returns the number of imports that had to decode their image.
+   * @return the number of misses.
+   */
+  synchronized long getMisses() {
+    return this.misses;
+  }
+
+  /**
+   * Returns the number of images dropped to stay within the budget.
+   * @return the number of evictions.
+   */
+  synchronized long getEvictions() {
+    return this.evictions;
+  }
+
+  /**
+   * Returns the number of bytes of decoded pixels currently cached.
+   * @return the cached bytes.
+   */
+  synchronized long getBytes() {
+    return this.bytes;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return this.hits + " hits, " + this.misses + " misses, " + this.evictions + " evictions, "
+            + this.images.size() + " images (" + this.bytes + " of " + this.budget + " bytes)";
+  }
+
+  /**
+   * Identifies a decoded image.
+   */
+  private static final class ImageKey {
+    private final String path;
+    private final long size;
+    private final long modified;
+    private final int canvasWidth;
+    private final int canvasHeight;
+    private final int maxValue;
+
+    /**
+     * Initializes a key.
+     * @param path - absolute path of the image file.
+     * @param size - size of the file in bytes.
+     * @param modified - last modification time of the file in milliseconds.
+     * @param canvasWidth - width of the part of the canvas the image is read for.
+     * @param canvasHeight - height of the part of the canvas the image is read for.
+     * @param maxValue - max value of the project.
+     */
+    private ImageKey(String path, long size, long modified, int canvasWidth, int canvasHeight,
+                     int maxValue) {
+      this.path = path;
+      this.size = size;
+      this.modified = modified;
+      this.canvasWidth = canvasWidth;
+      this.canvasHeight = canvasHeight;
+      this.maxValue = maxValue;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof ImageKey)) {
+        return false;
+      }
+      ImageKey other = (ImageKey) o;
+      return this.path.equals(other.path) && this.size == other.size
+              && this.modified == other.modified && this.canvasWidth == other.canvasWidth
+              && this.canvasHeight == other.canvasHeight && this.maxValue == other.maxValue;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(this.path, this.size, this.modified, this.canvasWidth,
+              this.canvasHeight, this.maxValue);
+    }
+  }
+}
@@ -0,0 +1,199 @@
+package controller;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DirectColorModel;
+import java.awt.image.Raster;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.Iterator;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+import model.Filter;
+import model.RasterLayer;
+
+/**
+ * Reads images decoded by ImageIO straight into a packed raster. Only the part of an image that
+ * lands on the canvas is decoded. Images whose pixels are stored as packed RGB ints
+ * (TYPE_INT_RGB, TYPE_INT_ARGB) or as interleaved 8-bit sRGB samples (TYPE_3BYTE_BGR,
+ * TYPE_4BYTE_ABGR and the layouts most JPEG and PNG images decode to) are copied out of their
+ * data buffer one row at a time with no color conversion. Any other image is read through
+ * {@link BufferedImage#getRGB(int, int, int, int, int[], int, int)} a row at a time.
+ * The alpha of the image is dropped; every pixel takes the project's max value as its alpha.
+ */
+class ImageRasterReader {
+
+  private ImageRasterReader() {
+  }
+
+  /**
+   * Decodes the part of an image that fits on the canvas and reads it into a layer. Only that
+   * region is requested from the image reader, so the pixels that would fall outside the canvas
+   * are never converted or stored.
+   * @param in - stream holding an image in a format known to ImageIO. It is not closed.
+   * @param canvasWidth - width of the part of the canvas the image can cover, from the column the
+   *                    image is placed at to the right edge.
+   * @param canvasHeight - height of the part of the canvas the image can cover, from the row the
+   *                     image is placed at to the bottom edge.
+   * @param maxValue - maximum value of a component in the project, also used as the alpha of
+   *                 every pixel.
+   * @return a layer holding the part of the image that fits on the canvas.
+   * @throws IllegalArgumentException - if the stream does not hold an image ImageIO can decode.
+   * @throws IOException - if the stream cannot be read.
+   */
+  static RasterLayer read(InputStream in, int canvasWidth, int canvasHeight, int maxValue)
+          throws IllegalArgumentException, IOException {
+    try (ImageInputStream stream = ImageIO.createImageInputStream(in)) {
+      Iterator<ImageReader> readers = stream == null ? Collections.emptyIterator()
+              : ImageIO.getImageReaders(stream);
+      if (!readers.hasNext()) {
+        throw new IllegalArgumentException("File format not supported.");
+      }
+      ImageReader reader = readers.next();
+      try {
+        reader.setInput(stream, true, true);
+        int imageWidth = Math.max(Math.min(reader.getWidth(0), canvasWidth), 0);
+        int imageHeight = Math.max(Math.min(reader.getHeight(0), canvasHeight), 0);
+        if (imageWidth == 0 || imageHeight == 0) {
+          return new RasterLayer(Filter.NORMAL, 0, 0, new int[0]);
+        }
+        ImageReadParam param = reader.getDefaultReadParam();
+        param.setSourceRegion(new Rectangle(0, 0, imageWidth, imageHeight));
+        return read(reader.read(0, param), imageWidth, imageHeight, maxValue);
+      } finally {
+        reader.dispose();
+      }
+    }
+  }
+
+  /**
+   * Reads an image into a layer.
+   * @param image - decoded image.
+   * @param canvasWidth - width of the canvas.
+   * @param canvasHeight - height of the canvas.
+   * @param maxValue - maximum value of a component in the project, also used as the alpha of
+   *                 every pixel.
+   * @return a layer holding the part of the image that fits on the canvas.
+   */
+  static RasterLayer read(BufferedImage image, int canvasWidth, int canvasHeight, int maxValue) {
+    int imageWidth = Math.min(image.getWidth(), canvasWidth);
+    int imageHeight = Math.min(image.getHeight(), canvasHeight);
+    int[] pixels = new int[imageHeight * imageWidth];
+    int alpha = RasterLayer.pack(0, 0, 0, maxValue);
+
+    if (!readPackedInts(image, imageWidth, imageHeight, alpha, pixels)
+            && !readInterleavedBytes(image, imageWidth, imageHeight, alpha, pixels)) {
+      for (int h = 0; h < imageHeight; h++) {
+        image.getRGB(0, h, imageWidth, 1, pixels, h * imageWidth, imageWidth);
+        for (int i = h * imageWidth; i < (h + 1) * imageWidth; i++) {
+          pixels[i] = pixels[i] & 0xFFFFFF | alpha;
+        }
+      }
+    }
+    return new RasterLayer(Filter.NORMAL, imageHeight, imageWidth, pixels);
+  }
+
+  /**
+   * Copies the pixels of an image stored as one packed RGB int per pixel.
+   * @param image - decoded image.
+   * @param imageWidth - number of columns to be copied.
+   * @param imageHeight - number of rows to be copied.
+   * @param alpha - packed alpha given to every pixel.
+   * @param pixels - packed raster the pixels are copied to.
+   * @return false if the image is not stored this way, in which case nothing is copied.
+   */
+  private static boolean readPackedInts(BufferedImage image, int imageWidth, int imageHeight,
+                                        int alpha, int[] pixels) {
+    Raster raster = image.getRaster();
+    ColorModel colorModel = image.getColorModel();
+    if (!(raster.getDataBuffer() instanceof DataBufferInt)
+            || !(raster.getSampleModel() instanceof SinglePixelPackedSampleModel)
+            || !(colorModel instanceof DirectColorModel) || colorModel.isAlphaPremultiplied()
+            || !colorModel.getColorSpace().isCS_sRGB()) {
+      return false;
+    }
+    DirectColorModel directModel = (DirectColorModel) colorModel;
+    if (directModel.getRedMask() != 0xFF0000 || directModel.getGreenMask() != 0xFF00
+            || directModel.getBlueMask() != 0xFF) {
+      return false;
+    }
+
+    SinglePixelPackedSampleModel sampleModel =
+            (SinglePixelPackedSampleModel) raster.getSampleModel();
+    DataBuffer buffer = raster.getDataBuffer();
+    int[] data = ((DataBufferInt) buffer).getData();
+    int stride = sampleModel.getScanlineStride();
+    int start = buffer.getOffset() - raster.getSampleModelTranslateY() * stride
+            - raster.getSampleModelTranslateX();
+    for (int h = 0; h < imageHeight; h++) {
+      int source = start + h * stride;
+      int dest = h * imageWidth;
+      for (int w = 0; w < imageWidth; w++) {
+        pixels[dest + w] = data[source + w] & 0xFFFFFF | alpha;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Copies the pixels of an image stored as interleaved 8-bit sRGB samples.
+   * @param image - decoded image.
+   * @param imageWidth - number of columns to be copied.
+   * @param imageHeight - number of rows to be copied.
+   * @param alpha - packed alpha given to every pixel.
+   * @param pixels - packed raster the pixels are copied to.
+   * @return false if the image is not stored this way, in which case nothing is copied.
+   */
+  private static boolean readInterleavedBytes(BufferedImage image, int imageWidth,
+                                              int imageHeight, int alpha, int[] pixels) {
+    Raster raster = image.getRaster();
+    ColorModel colorModel = image.getColorModel();
+    SampleModel model = raster.getSampleModel();
+    if (!(raster.getDataBuffer() instanceof DataBufferByte)
+            || !(model instanceof ComponentSampleModel)
+            || !(colorModel instanceof ComponentColorModel) || colorModel.isAlphaPremultiplied()
+            || !colorModel.getColorSpace().isCS_sRGB() || model.getNumBands() < 3) {
+      return false;
+    }
+    ComponentSampleModel sampleModel = (ComponentSampleModel) model;
+    for (int band = 0; band < 3; band++) {
+      if (sampleModel.getBankIndices()[band] != 0 || colorModel.getComponentSize(band) != 8) {
+        return false;
+      }
+    }
+
+    DataBuffer buffer = raster.getDataBuffer();
+    byte[] data = ((DataBufferByte) buffer).getData();
+    int pixelStride = sampleModel.getPixelStride();
+    int stride = sampleModel.getScanlineStride();
+    int[] bandOffsets = sampleModel.getBandOffsets();
+    int start = buffer.getOffset() - raster.getSampleModelTranslateY() * stride
+            - raster.getSampleModelTranslateX() * pixelStride;
+    int red = bandOffsets[0];
+    int green = bandOffsets[1];
+    int blue = bandOffsets[2];
+    for (int h = 0; h < imageHeight; h++) {
+      int source = start + h * stride;
+      int dest = h * imageWidth;
+      for (int w = 0; w < imageWidth; w++) {
+        pixels[dest + w] = (data[source + red] & 0xFF) << 16 | (data[source + green] & 0xFF) << 8
+                | (data[source + blue] & 0xFF) | alpha;
+        source += pixelStride;
+      }
+    }
+    return true;
+  }
+}
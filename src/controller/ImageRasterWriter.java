@@ -0,0 +1,55 @@
+package controller;
+
+import java.awt.Point;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DirectColorModel;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.io.File;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Writes rendered images through ImageIO. The packed pixels of the rendered image back the
+ * {@link BufferedImage} handed to ImageIO directly, through a {@link DataBufferInt} read as RGB,
+ * so nothing is copied or converted before the encoder reads the pixels.
+ */
+class ImageRasterWriter {
+  private static final DirectColorModel RGB = new DirectColorModel(24, 0xFF0000, 0xFF00, 0xFF);
+
+  private ImageRasterWriter() {
+  }
+
+  /**
+   * Wraps packed pixels in an RGB image without copying them. The alpha byte of each pixel is
+   * ignored.
+   * @param raster - packed pixels, one int per pixel in row-major order.
+   * @param width - width of the image.
+   * @param height - height of the image.
+   * @return an image backed by the given pixels.
+   */
+  static BufferedImage wrap(int[] raster, int width, int height) {
+    DataBufferInt buffer = new DataBufferInt(raster, width * height);
+    WritableRaster imageRaster = Raster.createPackedRaster(buffer, width, height, width,
+            RGB.getMasks(), new Point(0, 0));
+    return new BufferedImage(RGB, imageRaster, false, null);
+  }
+
+  /**
+   * Writes packed pixels to a file in the given format.
+   * @param raster - packed pixels, one int per pixel in row-major order.
+   * @param width - width of the image.
+   * @param height - height of the image.
+   * @param format - informal name of the format, such as "png" or "jpg".
+   * @param file - file the image is written to.
+   * @throws IOException - if the file cannot be written or ImageIO cannot write the format.
+   */
+  static void write(int[] raster, int width, int height, String format, File file)
+          throws IOException {
+    if (width == 0 || height == 0 || !ImageIO.write(wrap(raster, width, height), format, file)) {
+      throw new IOException("Unable to write to file");
+    }
+  }
+}
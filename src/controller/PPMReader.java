@@ -0,0 +1,198 @@
+package controller;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import model.Filter;
+import model.RasterLayer;
+
+/**
+ * Reads PPM images straight into a packed raster. Both the plain (P3) and the raw (P6) variants
+ * are supported. The file is read through a buffer one byte at a time and numbers are parsed by
+ * hand, so reading is limited by the speed of the file rather than by tokenizing. Comments,
+ * starting with '#' and running to the end of the line, may appear between any two numbers of a
+ * plain file and anywhere in the header of a raw file. Components are scaled from the file's
+ * maximum value to the project's, which is at most {@value RasterLayer#MAX_COMPONENT}.
+ */
+class PPMReader {
+  private static final int BUFFER_SIZE = 1 << 16;
+
+  private final InputStream in;
+  private final byte[] buffer;
+  private int position;
+  private int limit;
+
+  /**
+   * Initializes a reader over the given stream.
+   * @param in - stream positioned at the start of a PPM image.
+   */
+  private PPMReader(InputStream in) {
+    this.in = in;
+    this.buffer = new byte[BUFFER_SIZE];
+    this.position = 0;
+    this.limit = 0;
+  }
+
+  /**
+   * Reads a PPM image. Only the part of the image that fits on the canvas is kept; the rows below
+   * the canvas are not read at all.
+   * @param in - stream positioned at the start of a PPM image. It is not closed.
+   * @param canvasWidth - width of the canvas.
+   * @param canvasHeight - height of the canvas.
+   * @param maxValue - maximum value of a component in the project, also used as the alpha of
+   *                 every pixel.
+   * @return a layer holding the part of the image that fits on the canvas.
+   * @throws IllegalArgumentException - if the stream does not hold a valid PPM image, one of its
+   *                                  samples is larger than its maximum value, or the project's
+   *                                  max value is larger than {@value RasterLayer#MAX_COMPONENT}.
+   * @throws IOException - if the stream cannot be read.
+   */
+  static RasterLayer read(InputStream in, int canvasWidth, int canvasHeight, int maxValue)
+          throws IllegalArgumentException, IOException {
+    if (maxValue > RasterLayer.MAX_COMPONENT) {
+      throw new IllegalArgumentException("Max value cannot be larger than "
+              + RasterLayer.MAX_COMPONENT + ".");
+    }
+    return new PPMReader(in).readImage(canvasWidth, canvasHeight, maxValue);
+  }
+
+  /**
+   * Reads the header and the pixels of the image that fit on the canvas.
+   * @param canvasWidth - width of the canvas.
+   * @param canvasHeight - height of the canvas.
+   * @param maxValue - maximum value of a component in the project.
+   * @return a layer holding the part of the image that fits on the canvas.
+   * @throws IllegalArgumentException - if the stream does not hold a valid PPM image.
+   * @throws IOException - if the stream cannot be read.
+   */
+  private RasterLayer readImage(int canvasWidth, int canvasHeight, int maxValue)
+          throws IllegalArgumentException, IOException {
+    int magic = read();
+    int format = read();
+    if (magic != 'P' || (format != '3' && format != '6')) {
+      throw new IllegalArgumentException("Invalid PPM file: file should begin with P3 or P6");
+    }
+    boolean raw = format == '6';
+
+    int width = nextInt();
+    int height = nextInt();
+    int fileMaxValue = nextInt();
+    if (fileMaxValue < 1 || fileMaxValue > 65535) {
+      throw new IllegalArgumentException("Invalid PPM file: maximum value must be between 1 and "
+              + "65535");
+    }
+    if (raw) {
+      // a single whitespace character separates the header from the raw samples
+      read();
+    }
+
+    int imageWidth = Math.min(width, canvasWidth);
+    int imageHeight = Math.min(height, canvasHeight);
+    int[] pixels = new int[imageHeight * imageWidth];
+    boolean wideSamples = fileMaxValue > 255;
+
+    for (int h = 0; h < imageHeight; h++) {
+      for (int w = 0; w < width; w++) {
+        int r = raw ? nextSample(wideSamples) : nextInt();
+        int g = raw ? nextSample(wideSamples) : nextInt();
+        int b = raw ? nextSample(wideSamples) : nextInt();
+        if (r > fileMaxValue || g > fileMaxValue || b > fileMaxValue) {
+          throw new IllegalArgumentException("Invalid PPM file: sample is larger than the "
+                  + "maximum value");
+        }
+        if (w < imageWidth) {
+          if (fileMaxValue != maxValue) {
+            r = scale(r, fileMaxValue, maxValue);
+            g = scale(g, fileMaxValue, maxValue);
+            b = scale(b, fileMaxValue, maxValue);
+          }
+          pixels[h * imageWidth + w] = RasterLayer.pack(r, g, b, maxValue);
+        }
+      }
+    }
+    return new RasterLayer(Filter.NORMAL, imageHeight, imageWidth, pixels);
+  }
+
+  /**
+   * Reads the next non-negative decimal number, skipping whitespace and comments before it.
+   * @return the number.
+   * @throws IllegalArgumentException - if the stream ends or holds anything else.
+   * @throws IOException - if the stream cannot be read.
+   */
+  private int nextInt() throws IllegalArgumentException, IOException {
+    int c = read();
+    while (c == '#' || Character.isWhitespace(c)) {
+      if (c == '#') {
+        while (c != '\n' && c != '\r' && c != -1) {
+          c = read();
+        }
+      }
+      c = read();
+    }
+    if (c < '0' || c > '9') {
+      throw new IllegalArgumentException(c == -1 ? "Invalid PPM file: file ended early"
+              : "Invalid PPM file: expected a number");
+    }
+
+    int value = 0;
+    while (c >= '0' && c <= '9') {
+      value = value * 10 + (c - '0');
+      if (value > 99999999) {
+        throw new IllegalArgumentException("Invalid PPM file: number is too large");
+      }
+      c = read();
+    }
+    // the character ending the number may start a comment, so it is left for the next read
+    if (c != -1) {
+      this.position--;
+    }
+    return value;
+  }
+
+  /**
+   * Reads the next sample of a raw image.
+   * @param wide - true if samples take two bytes, most significant first.
+   * @return the sample.
+   * @throws IllegalArgumentException - if the stream ends.
+   * @throws IOException - if the stream cannot be read.
+   */
+  private int nextSample(boolean wide) throws IllegalArgumentException, IOException {
+    int sample = read();
+    if (wide && sample != -1) {
+      int low = read();
+      sample = low == -1 ? -1 : sample << 8 | low;
+    }
+    if (sample == -1) {
+      throw new IllegalArgumentException("Invalid PPM file: file ended early");
+    }
+    return sample;
+  }
+
+  /**
+   * Reads the next byte of the stream, refilling the buffer when it runs out.
+   * @return the byte, or -1 at the end of the stream.
+   * @throws IOException - if the stream cannot be read.
+   */
+  private int read() throws IOException {
+    if (this.position == this.limit) {
+      this.limit = this.in.read(this.buffer, 0, this.buffer.length);
+      this.position = 0;
+      if (this.limit <= 0) {
+        this.limit = 0;
+        return -1;
+      }
+    }
+    return this.buffer[this.position++] & 0xFF;
+  }
+
+  /**
+   * Scales a component from one maximum value to another, rounding to the nearest value.
+   * @param component - component to be scaled.
+   * @param from - maximum value the component is given in.
+   * @param to - maximum value the component is scaled to.
+   * @return the scaled component.
+   */
+  private static int scale(int component, int from, int to) {
+    return (int) ((Math.min(component, from) * (long) to + from / 2) / from);
+  }
+}
@@ -0,0 +1,200 @@
+package controller;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+
+/**
+ * Keeps the rendered image of a project at full size and at successive halvings of its size, so a
+ * preview can be drawn from the level closest to its zoom instead of scaling the full image down.
+ * Each level is an RGB image whose pixels average the 2x2 pixels beneath them in the level below.
+ * Levels are halved until neither side is larger than {@value #SMALLEST_SIDE} pixels.
+ *
+ * <p>The pyramid is kept up to date by copying in only the part of the canvas a render changed and
+ * averaging that part up through the levels. Updates happen on the thread that renders, while the
+ * levels may be drawn on another one; a frame drawn during an update can mix old and new pixels of
+ * the changed region, and is drawn again once the update is shown.
+ *
+ * <p>A quick draft of a render can be put in one of the smaller levels before the full render is
+ * ready. Until then the levels below the draft are out of date, and
+ * {@link #getFinestLevel()} tells which levels can be drawn.
+ */
+public final class PreviewPyramid {
+  private static final int SMALLEST_SIDE = 256;
+
+  private final int[][] levels;
+  private final int[] widths;
+  private final int[] heights;
+  private final BufferedImage[] images;
+  // the levels below this one are out of date until the next full update
+  private volatile int finestLevel;
+  // level a draft was put in since the last full update, the number of levels if none
+  private int draftLevel;
+
+  /**
+   * Initializes a pyramid for a canvas, with every level black.
+   * @param width - width of the canvas.
+   * @param height - height of the canvas.
+   */
+  PreviewPyramid(int width, int height) {
+    int count = 1;
+    while (Math.max(width >> (count - 1), height >> (count - 1)) > SMALLEST_SIDE) {
+      count++;
+    }
+    this.levels = new int[count][];
+    this.widths = new int[count];
+    this.heights = new int[count];
+    this.images = new BufferedImage[count];
+    for (int level = 0; level < count; level++) {
+      this.widths[level] = level == 0 ? width : (this.widths[level - 1] + 1) / 2;
+      this.heights[level] = level == 0 ? height : (this.heights[level - 1] + 1) / 2;
+      this.levels[level] = new int[this.widths[level] * this.heights[level]];
+      this.images[level] = ImageRasterWriter.wrap(this.levels[level], this.widths[level],
+              this.heights[level]);
+    }
+    this.finestLevel = 0;
+    this.draftLevel = count;
+  }
+
+  /**
+   * Copies part of a rendered image into the pyramid and refreshes the levels above it.
+   * @param raster - packed pixels of the rendered image, the size of the canvas.
+   * @param region - part of the canvas that changed.
+   */
+  void update(int[] raster, Rectangle region) {
+    Rectangle changed = region.intersection(new Rectangle(0, 0, this.widths[0], this.heights[0]));
+    if (changed.isEmpty() && this.draftLevel == this.levels.length) {
+      return;
+    }
+    int width = this.widths[0];
+    for (int y = changed.y; y < changed.y + changed.height; y++) {
+      System.arraycopy(raster, y * width + changed.x, this.levels[0], y * width + changed.x,
+              changed.width);
+    }
+
+    for (int level = 1; level < this.levels.length; level++) {
+      int left = changed.x / 2;
+      int top = changed.y / 2;
+      int right = (changed.x + changed.width + 1) / 2;
+      int bottom = (changed.y + changed.height + 1) / 2;
+      changed = new Rectangle(left, top, right - left, bottom - top);
+      // a level the draft went into is averaged afresh, as the draft was only sampled
+      halve(level, level >= this.draftLevel
+              ? new Rectangle(0, 0, this.widths[level], this.heights[level]) : changed);
+    }
+    this.draftLevel = this.levels.length;
+    this.finestLevel = 0;
+  }
+
+  /**
+   * Puts a draft of the rendered image in one of the smaller levels and refreshes the levels
+   * above it. The levels below it are out of date until the next full update.
+   * @param level - level the draft is put in, at least 1.
+   * @param draft - packed pixels of the draft, the size of the level.
+   */
+  void draft(int level, int[] draft) {
+    System.arraycopy(draft, 0, this.levels[level], 0, this.levels[level].length);
+    for (int above = level + 1; above < this.levels.length; above++) {
+      halve(above, new Rectangle(0, 0, this.widths[above], this.heights[above]));
+    }
+    this.draftLevel = Math.min(this.draftLevel, level);
+    this.finestLevel = level;
+  }
+
+  /**
+   * Averages a region of a level from the level below it.
+   * @param level - level to be computed, at least 1.
+   * @param region - region of the level to be computed.
+   */
+  private void halve(int level, Rectangle region) {
+    int[] below = this.levels[level - 1];
+    int belowWidth = this.widths[level - 1];
+    int belowHeight = this.heights[level - 1];
+    int[] dest = this.levels[level];
+    int width = this.widths[level];
+    for (int y = region.y; y < region.y + region.height; y++) {
+      int top = 2 * y * belowWidth;
+      int bottom = Math.min(2 * y + 1, belowHeight - 1) * belowWidth;
+      for (int x = region.x; x < region.x + region.width; x++) {
+        int left = 2 * x;
+        int right = Math.min(2 * x + 1, belowWidth - 1);
+        dest[y * width + x] = average(below[top + left], below[top + right],
+                below[bottom + left], below[bottom + right]);
+      }
+    }
+  }
+
+  /**
+   * Averages four packed pixels. Red and blue are summed together in one int, as are the green
+   * components, since the sum of four components never spills into the next one.
+   * @param a - first pixel.
+   * @param b - second pixel.
+   * @param c - third pixel.
+   * @param d - fourth pixel.
+   * @return the average pixel, rounded to nearest.
+   */
+  private static int average(int a, int b, int c, int d) {
+    int redBlue = (a & 0xFF00FF) + (b & 0xFF00FF) + (c & 0xFF00FF) + (d & 0xFF00FF) + 0x20002;
+    int green = (a & 0xFF00) + (b & 0xFF00) + (c & 0xFF00) + (d & 0xFF00) + 0x200;
+    return (redBlue >>> 2) & 0xFF00FF | (green >>> 2) & 0xFF00;
+  }
+
+  /**
+   * Returns the width of the canvas.
+   * @return the width of the full size level.
+   */
+  public int getWidth() {
+    return this.widths[0];
+  }
+
+  /**
+   * Returns the height of the canvas.
+   * @return the height of the full size level.
+   */
+  public int getHeight() {
+    return this.heights[0];
+  }
+
+  /**
+   * Returns the number of levels, the full size one included.
+   * @return the number of levels.
+   */
+  public int getLevelCount() {
+    return this.levels.length;
+  }
+
+  /**
+   * Returns a level of the pyramid. Level 0 is the full size image, each next level is half as
+   * wide and high, rounded up.
+   * @param level - index of the level.
+   * @return the image of the level, backed by the pixels kept up to date by the pyramid.
+   * @throws IllegalArgumentException - if there is no such level.
+   */
+  public BufferedImage getLevel(int level) throws IllegalArgumentException {
+    if (level < 0 || level >= this.images.length) {
+      throw new IllegalArgumentException("No such preview level: " + level);
+    }
+    return this.images[level];
+  }
+
+  /**
+   * Returns the most detailed level that is up to date. It is 0 unless a draft is shown while the
+   * full render is under way.
+   * @return the index of the finest level that can be drawn.
+   */
+  public int getFinestLevel() {
+    return this.finestLevel;
+  }
+
+  /**
+   * Picks the smallest level that still has at least one pixel for each pixel drawn at a zoom.
+   * @param zoom - size on screen of one pixel of the canvas.
+   * @return the index of the level to be drawn from.
+   */
+  public int levelFor(double zoom) {
+    int level = 0;
+    while (level + 1 < this.levels.length && zoom * (1 << (level + 1)) <= 1) {
+      level++;
+    }
+    return level;
+  }
+}
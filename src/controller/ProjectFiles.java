@@ -0,0 +1,183 @@
+package controller;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFileAttributes;
+
+import model.BinaryProjectFormat;
+import model.CollageModel;
+import model.JournalProjectFormat;
+
+/**
+ * Saves projects to files. A project is written to a temporary file next to its destination and
+ * then moved over the destination, so a failed save never leaves a half-written project behind,
+ * and layers still mapped from the project being replaced keep reading the old file. The
+ * temporary file is created with the default permissions, and takes the permissions, owner and
+ * group of the file it replaces where the file system allows. A destination that is a symbolic
+ * link is resolved first, so the file it points to is replaced and the link is kept.
+ *
+ * <p>Journaled projects are the exception: when a project is saved to the journal it was loaded
+ * from or last saved to, and nothing else has written to that journal since, only the changes are
+ * appended to it. A save that fails halfway through leaves an incomplete record behind, which is
+ * ignored when the journal is loaded. The journal is compacted by writing it afresh, as any other
+ * project, once it has grown too large or taken too many appended saves.
+ */
+class ProjectFiles {
+  private static final int MAX_APPENDED_SAVES = 64;
+  private static final int MAX_SYMBOLIC_LINKS = 40;
+
+  private Path journal;
+  private long journalSize;
+  private int appendedSaves;
+
+  /**
+   * Initializes project files with no journal to append to.
+   */
+  ProjectFiles() {
+    this.journal = null;
+    this.journalSize = 0;
+    this.appendedSaves = 0;
+  }
+
+  /**
+   * Saves the project in the binary format if the file name ends in ".c2", in the journaled format
+   * if it ends in ".cj", otherwise as C1 text.
+   * @param model - model holding the project.
+   * @param file - file the project is saved to.
+   * @throws IOException - if the file cannot be written.
+   */
+  void save(CollageModel model, Path file) throws IOException {
+    Path target = resolve(file);
+    String name = target.getFileName().toString();
+    boolean journaled = JournalProjectFormat.isJournalProjectName(name);
+    if (journaled && canAppend(model, target)) {
+      Path appendedTo = this.journal;
+      this.journal = null;
+      try (OutputStream out = Files.newOutputStream(target, StandardOpenOption.APPEND)) {
+        model.saveProjectChanges(out, false);
+      }
+      this.journal = appendedTo;
+      this.journalSize = Files.size(target);
+      this.appendedSaves++;
+      return;
+    }
+
+    Path temp = target.resolveSibling(name + ".tmp");
+    try {
+      try (OutputStream out = Files.newOutputStream(temp)) {
+        if (journaled) {
+          this.journal = null;
+          model.saveProjectChanges(out, true);
+        } else if (BinaryProjectFormat.isBinaryProjectName(name)) {
+          model.saveBinaryProject(out);
+        } else {
+          model.saveProject(out);
+        }
+      }
+      copyAttributes(target, temp);
+      try {
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+      } catch (AtomicMoveNotSupportedException e) {
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+      }
+    } finally {
+      Files.deleteIfExists(temp);
+    }
+    if (journaled) {
+      remember(target);
+    }
+  }
+
+  /**
+   * Records that a project has been loaded from the given file, so that saving it back to the same
+   * journal only appends the changes.
+   * @param file - file the project was loaded from.
+   */
+  void loaded(Path file) {
+    this.journal = null;
+    try {
+      if (JournalProjectFormat.isJournalProject(file)) {
+        remember(resolve(file));
+      }
+    } catch (IOException e) {
+      // the next save to the file writes a new journal
+    }
+  }
+
+  /**
+   * Follows symbolic links to the file they point to, whether or not it exists yet.
+   * @param file - path given for the project.
+   * @return the absolute path of the file the project is written to.
+   * @throws IOException - if the links cannot be read or point to each other in a loop.
+   */
+  private static Path resolve(Path file) throws IOException {
+    Path target = file.toAbsolutePath();
+    for (int links = 0; Files.isSymbolicLink(target); links++) {
+      if (links == MAX_SYMBOLIC_LINKS) {
+        throw new FileSystemException(file.toString(), null, "Too many levels of symbolic links");
+      }
+      target = target.resolveSibling(Files.readSymbolicLink(target)).normalize();
+    }
+    return target;
+  }
+
+  /**
+   * Gives the temporary file of a save the permissions, owner and group of the file it replaces.
+   * Nothing is copied when there is no such file or the file system has no POSIX attributes.
+   * @param target - file being replaced.
+   * @param temp - temporary file holding the saved project.
+   * @throws IOException - if the permissions cannot be copied.
+   */
+  private static void copyAttributes(Path target, Path temp) throws IOException {
+    PosixFileAttributeView view = Files.getFileAttributeView(temp, PosixFileAttributeView.class,
+            LinkOption.NOFOLLOW_LINKS);
+    if (view == null || !Files.exists(target)) {
+      return;
+    }
+    PosixFileAttributes attributes = Files.readAttributes(target, PosixFileAttributes.class);
+    view.setPermissions(attributes.permissions());
+    try {
+      view.setGroup(attributes.group());
+      view.setOwner(attributes.owner());
+    } catch (IOException e) {
+      // only a privileged user can give a file away; the saved file keeps the saving user's
+    }
+  }
+
+  /**
+   * Remembers the journal the project was last loaded from or saved to.
+   * @param target - path of the journal.
+   * @throws IOException - if the size of the journal cannot be read.
+   */
+  private void remember(Path target) throws IOException {
+    this.journalSize = Files.size(target);
+    this.appendedSaves = 0;
+    this.journal = target;
+  }
+
+  /**
+   * Checks whether the changes to the project can be appended to the given file, which is the case
+   * when it is the journal the project was last loaded from or saved to, it has not changed size
+   * since, and it is not due for compaction.
+   * @param model - model holding the project.
+   * @param target - file the project is saved to.
+   * @return true if the changes can be appended.
+   * @throws IOException - if the size of the file cannot be read.
+   */
+  private boolean canAppend(CollageModel model, Path target) throws IOException {
+    return target.equals(this.journal) && Files.isRegularFile(target)
+            && Files.size(target) == this.journalSize
+            && this.appendedSaves < MAX_APPENDED_SAVES
+            && !JournalProjectFormat.shouldCompact(this.journalSize, model.getWidth(),
+            model.getHeight(), model.getLayerNames().size());
+  }
+}
@@ -0,0 +1,93 @@
+package controller;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coalesces requests to render a project. A request marks the project as needing a render and
+ * starts the debounce interval again, and the render only runs once a whole interval has passed
+ * without another request, so a burst of edits is rendered once rather than once per edit.
+ * Renders run on a thread of the scheduler, which stops once it has been idle for a second.
+ * A render already running when a new request comes in is not stopped; the render itself decides
+ * whether to give way.
+ */
+public final class RenderScheduler {
+  /**
+   * Debounce interval of one frame at 60 frames per second, in milliseconds.
+   */
+  public static final long FRAME_MILLIS = 16;
+
+  private final long debounceMillis;
+  private final Runnable render;
+  private final ScheduledThreadPoolExecutor executor;
+  private ScheduledFuture<?> pending;
+  private long requests;
+
+  /**
+   * Initializes a scheduler with no render pending.
+   * @param debounceMillis - time without requests after which the render runs, in milliseconds.
+   * @param render - renders the project.
+   * @throws IllegalArgumentException - if the interval is negative or the render is null.
+   */
+  public RenderScheduler(long debounceMillis, Runnable render) throws IllegalArgumentException {
+    if (debounceMillis < 0 || render == null) {
+      throw new IllegalArgumentException("Invalid debounce interval or render.");
+    }
+    this.debounceMillis = debounceMillis;
+    this.render = render;
+    this.executor = new ScheduledThreadPoolExecutor(1, task -> {
+      Thread thread = new Thread(task, "collage-render-scheduler");
+      thread.setDaemon(true);
+      return thread;
+    });
+    this.executor.setKeepAliveTime(1, TimeUnit.SECONDS);
+    this.executor.allowCoreThreadTimeOut(true);
+    this.executor.setRemoveOnCancelPolicy(true);
+    this.pending = null;
+    this.requests = 0;
+  }
+
+  /**
+   * Asks for a render, putting off a pending one until a whole interval has passed without
+   * another request.
+   */
+  public synchronized void requestRender() {
+    if (this.pending != null) {
+      this.pending.cancel(false);
+    }
+    long request = ++this.requests;
+    this.pending = this.executor.schedule(() -> run(request), this.debounceMillis,
+            TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Tells whether a render has been asked for and has not started yet.
+   * @return true if a render is pending.
+   */
+  public synchronized boolean isPending() {
+    return this.pending != null;
+  }
+
+  /**
+   * Returns the debounce interval.
+   * @return the time without requests after which the render runs, in milliseconds.
+   */
+  public long getDebounceMillis() {
+    return this.debounceMillis;
+  }
+
+  /**
+   * Runs the pending render.
+   * @param request - number of the request the render was scheduled for.
+   */
+  private void run(long request) {
+    synchronized (this) {
+      // a request made while this render was starting stays pending
+      if (request == this.requests) {
+        this.pending = null;
+      }
+    }
+    this.render.run();
+  }
+}
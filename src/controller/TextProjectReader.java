@@ -0,0 +1,318 @@
+package controller;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import model.Filter;
+import model.ILayer;
+import model.RasterLayer;
+
+/**
+ * Reads projects saved in the C1 text format. The file is first scanned once to find where each
+ * layer starts: a layer is a name and a filter followed by four numbers for each pixel of the
+ * canvas, so the numbers are counted off to find the name of the next layer, whatever it looks
+ * like. A layer cut short by the end of the file has its missing pixels left transparent. The
+ * layers are then decoded at the same time on a fixed number of threads, each from its own
+ * read-only mapping of the file, and collected in the order they appear in the file. Components
+ * are stored as 8-bit values, so a project whose max value or components are larger than
+ * {@value RasterLayer#MAX_COMPONENT} is rejected.
+ */
+class TextProjectReader {
+  private static final int BUFFER_SIZE = 1 << 16;
+
+  private final FileChannel channel;
+  private final ByteBuffer buffer;
+  private long position;
+
+  /**
+   * Initializes a reader scanning the given file from its start.
+   * @param channel - channel open for reading on the project file.
+   */
+  private TextProjectReader(FileChannel channel) {
+    this.channel = channel;
+    this.buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    this.buffer.flip();
+    this.position = 0;
+  }
+
+  /**
+   * Reads a C1 project.
+   * @param file - project file.
+   * @param threads - largest number of layers decoded at the same time.
+   * @return the canvas content (width, height and maxValue) followed by the layers of the
+   *         project, in the form taken by {@link model.CollageModel#loadProject}.
+   * @throws IllegalArgumentException - if the file is not a valid C1 project.
+   * @throws IOException - if the file cannot be read.
+   */
+  static LinkedHashMap[] read(Path file, int threads) throws IllegalArgumentException,
+          IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      return new TextProjectReader(channel).readProject(Math.max(1, threads));
+    }
+  }
+
+  /**
+   * Scans the file for its layers and decodes them.
+   * @param threads - largest number of layers decoded at the same time.
+   * @return the canvas content followed by the layers of the project.
+   * @throws IllegalArgumentException - if the file is not a valid C1 project.
+   * @throws IOException - if the file cannot be read.
+   */
+  private LinkedHashMap[] readProject(int threads) throws IllegalArgumentException, IOException {
+    if (!nextToken().equals("C1")) {
+      throw new IllegalArgumentException("Invalid Collage file: plain RAW file should begin with "
+              + "C1");
+    }
+    int width = parseInt(nextToken());
+    int height = parseInt(nextToken());
+    int maxValue = parseInt(nextToken());
+    if (width < 0 || height < 0 || maxValue < 1) {
+      throw new IllegalArgumentException("Invalid Collage file: negative dimensions or max value "
+              + "less than 1");
+    }
+    if (maxValue > RasterLayer.MAX_COMPONENT) {
+      throw new IllegalArgumentException("Invalid Collage file: max value cannot be larger than "
+              + RasterLayer.MAX_COMPONENT);
+    }
+
+    LinkedHashMap<String, Integer> canvasContent = new LinkedHashMap<>();
+    canvasContent.put("width", width);
+    canvasContent.put("height", height);
+    canvasContent.put("maxValue", maxValue);
+
+    List<String[]> headers = new ArrayList<>();
+    List<long[]> ranges = new ArrayList<>();
+    long components = (long) width * height * 4;
+    for (String name = nextTokenOrNull(); name != null; name = nextTokenOrNull()) {
+      String filter = nextTokenOrNull();
+      if (filter == null) {
+        throw new IllegalArgumentException("Invalid Collage file: layer line should hold a "
+                + "name and a filter");
+      }
+      headers.add(new String[] {name, filter});
+      long start = this.position;
+      skipTokens(components);
+      ranges.add(new long[] {start, this.position});
+    }
+
+    LinkedHashMap<String, ILayer> projectContentMap = new LinkedHashMap<>();
+    if (headers.isEmpty()) {
+      LinkedHashMap[] projectContent = {canvasContent, projectContentMap};
+      return projectContent;
+    }
+
+    ExecutorService decoders = Executors.newFixedThreadPool(Math.min(threads, headers.size()));
+    try {
+      List<Future<RasterLayer>> layers = new ArrayList<>();
+      for (int i = 0; i < headers.size(); i++) {
+        Filter filterOption = stringToFilterOption(headers.get(i)[1]);
+        long[] range = ranges.get(i);
+        layers.add(decoders.submit(() -> decodeLayer(range[0], range[1], filterOption, width,
+                height, maxValue)));
+      }
+      for (int i = 0; i < headers.size(); i++) {
+        projectContentMap.put(headers.get(i)[0], layers.get(i).get());
+      }
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IllegalArgumentException) {
+        throw (IllegalArgumentException) e.getCause();
+      }
+      throw new IOException("Unable to read project", e.getCause());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while reading project", e);
+    } finally {
+      decoders.shutdownNow();
+    }
+
+    LinkedHashMap[] projectContent = {canvasContent, projectContentMap};
+    return projectContent;
+  }
+
+  /**
+   * Decodes the pixel content of one layer. Pixels missing at the end of the layer are left
+   * transparent black.
+   * @param start - offset of the first byte of the layer's pixel content.
+   * @param end - offset just past the last byte of the layer's pixel content.
+   * @param filterOption - filter of the layer.
+   * @param width - width of the canvas.
+   * @param height - height of the canvas.
+   * @param maxValue - max value of the project.
+   * @return the decoded layer.
+   * @throws IllegalArgumentException - if the content holds anything but numbers, or a number
+   *                                  larger than the max value.
+   * @throws IOException - if the file cannot be read.
+   */
+  private RasterLayer decodeLayer(long start, long end, Filter filterOption, int width,
+                                  int height, int maxValue)
+          throws IllegalArgumentException, IOException {
+    MappedByteBuffer content = this.channel.map(FileChannel.MapMode.READ_ONLY, start,
+            end - start);
+    int[] pixels = new int[height * width];
+    int[] components = new int[4];
+    for (int i = 0; i < pixels.length; i++) {
+      for (int k = 0; k < 4; k++) {
+        int c = 0;
+        while (content.hasRemaining() && Character.isWhitespace(c = content.get())) {
+          continue;
+        }
+        if (!content.hasRemaining() && (c < '0' || c > '9')) {
+          return new RasterLayer(filterOption, height, width, pixels);
+        }
+        int value = 0;
+        while (c >= '0' && c <= '9') {
+          value = value * 10 + (c - '0');
+          if (value > maxValue) {
+            throw new IllegalArgumentException("Invalid Collage file: component is larger than "
+                    + "the max value");
+          }
+          c = content.hasRemaining() ? content.get() : ' ';
+        }
+        if (!Character.isWhitespace(c)) {
+          throw new IllegalArgumentException("Invalid Collage file: expected a number");
+        }
+        components[k] = value;
+      }
+      pixels[i] = RasterLayer.pack(components[0], components[1], components[2], components[3]);
+    }
+    return new RasterLayer(filterOption, height, width, pixels);
+  }
+
+  /**
+   * Reads the next whitespace-separated token of the file.
+   * @return the token.
+   * @throws IllegalArgumentException - if the file ends first.
+   * @throws IOException - if the file cannot be read.
+   */
+  private String nextToken() throws IllegalArgumentException, IOException {
+    String token = nextTokenOrNull();
+    if (token == null) {
+      throw new IllegalArgumentException("Invalid Collage file: file ended early");
+    }
+    return token;
+  }
+
+  /**
+   * Reads the next whitespace-separated token of the file, along with the character ending it.
+   * @return the token, or null at the end of the file.
+   * @throws IOException - if the file cannot be read.
+   */
+  private String nextTokenOrNull() throws IOException {
+    int c = read();
+    while (c != -1 && Character.isWhitespace(c)) {
+      c = read();
+    }
+    if (c == -1) {
+      return null;
+    }
+    StringBuilder token = new StringBuilder();
+    while (c != -1 && !Character.isWhitespace(c)) {
+      token.append((char) c);
+      c = read();
+    }
+    return token.toString();
+  }
+
+  /**
+   * Skips whitespace-separated tokens of the file, each along with the character ending it. The
+   * buffer is scanned directly, as the pixel content makes up nearly all of the file.
+   * @param count - number of tokens to be skipped.
+   * @throws IOException - if the file cannot be read.
+   */
+  private void skipTokens(long count) throws IOException {
+    long skipped = 0;
+    boolean inToken = false;
+    while (skipped < count && (this.buffer.hasRemaining() || fill())) {
+      byte[] bytes = this.buffer.array();
+      int start = this.buffer.position();
+      int limit = this.buffer.limit();
+      int i = start;
+      while (i < limit) {
+        int c = bytes[i++];
+        if (!isWhitespace(c)) {
+          inToken = true;
+        } else if (inToken) {
+          inToken = false;
+          if (++skipped == count) {
+            break;
+          }
+        }
+      }
+      this.buffer.position(i);
+      this.position += i - start;
+    }
+  }
+
+  /**
+   * Tells whether a byte of the file is whitespace, as {@link Character#isWhitespace(int)} does.
+   * @param c - byte of the file, sign extended.
+   * @return true if the byte separates tokens.
+   */
+  private static boolean isWhitespace(int c) {
+    return c == ' ' || (c >= '\t' && c <= '\r') || (c >= 0x1C && c <= 0x1F);
+  }
+
+  /**
+   * Reads the next byte of the file, refilling the buffer when it runs out.
+   * @return the byte, or -1 at the end of the file.
+   * @throws IOException - if the file cannot be read.
+   */
+  private int read() throws IOException {
+    if (!this.buffer.hasRemaining() && !fill()) {
+      return -1;
+    }
+    this.position++;
+    return this.buffer.get() & 0xFF;
+  }
+
+  /**
+   * Reads the bytes from the current position of the file into the buffer.
+   * @return false if the end of the file has been reached.
+   * @throws IOException - if the file cannot be read.
+   */
+  private boolean fill() throws IOException {
+    this.buffer.clear();
+    int read = this.channel.read(this.buffer, this.position);
+    this.buffer.flip();
+    return read > 0;
+  }
+
+  /**
+   * Parses a number of the header.
+   * @param token - token holding the number.
+   * @return the number.
+   * @throws IllegalArgumentException - if the token is not a number.
+   */
+  private static int parseInt(String token) throws IllegalArgumentException {
+    try {
+      return Integer.parseInt(token);
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Invalid Collage file: expected a number");
+    }
+  }
+
+  /**
+   * represents the StringToFiterOption method.
+   * @param filterCommand string for filter command.
+   * @return Filter.
+   */
+  private static Filter stringToFilterOption(String filterCommand) {
+    for (Filter fil : Filter.values()) {
+      if (fil.getValue().equals(filterCommand)) {
+        return fil;
+      }
+    }
+    throw new IllegalArgumentException("Filter does not exist");
+  }
+}
@@ -0,0 +1,21 @@
+package model;
+
+/**
+ * This interface represents the arithmetic used to composite one layer over another. The pixels of
+ * the current layer are placed over the background according to the current layer's alpha
+ * component, and the alpha of the result is the combined coverage of both pixels.
+ */
+public interface AlphaCompositor {
+
+  /**
+   * Composites a run of packed ARGB pixels over the matching run of background pixels.
+   * @param current - packed pixels of the layer placed on top.
+   * @param currentOffset - index in current of the first pixel of the run.
+   * @param background - packed pixels of the layer underneath.
+   * @param dest - packed pixels the result is written to. May be the background.
+   * @param offset - index in background and dest of the first pixel of the run.
+   * @param length - number of pixels in the run.
+   */
+  void compositeRow(int[] current, int currentOffset, int[] background, int[] dest, int offset,
+                    int length);
+}
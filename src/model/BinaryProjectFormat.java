@@ -0,0 +1,255 @@
+package model;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Represents the binary project format. A binary project starts with a header holding the
+ * characters "C2", the format version, the width, height and max value of the canvas and the
+ * number of layers. A table of contents follows with the name and filter of every layer and the
+ * offset and length in bytes of its pixel content. The pixel content of each layer is stored as
+ * one packed ARGB int per pixel in row-major order, so loading a layer is a single copy out of a
+ * memory-mapped file. Layers are read lazily: loading a project only reads the header and the table
+ * of contents, and each layer is copied out of the file the first time its pixels are needed.
+ * All numbers are big-endian; names and filters are stored as by
+ * {@link DataOutputStream#writeUTF}.
+ * The text C1 format remains available through {@link CollageModel#saveProject()}.
+ */
+public final class BinaryProjectFormat {
+
+  /**
+   * File extension of binary projects.
+   */
+  public static final String EXTENSION = "c2";
+
+  /**
+   * Version of the format written by this class.
+   */
+  public static final int VERSION = 1;
+
+  private static final int HEADER_SIZE = 2 + 5 * Integer.BYTES;
+  private static final int BUFFER_SIZE = 1 << 16;
+
+  private BinaryProjectFormat() {
+  }
+
+  /**
+   * Checks whether a project saved under the given name should use the binary format, which is
+   * the case when the name ends in the binary extension. Other projects are saved as C1 text.
+   * @param fileName - name the project is saved under.
+   * @return true if the name ends in ".c2".
+   */
+  public static boolean isBinaryProjectName(String fileName) {
+    return fileName.toLowerCase().endsWith("." + EXTENSION);
+  }
+
+  /**
+   * Checks whether a file holds a binary project by looking at its first characters.
+   * @param file - file to be checked.
+   * @return true if the file starts like a binary project.
+   * @throws IOException - if the file cannot be read.
+   */
+  public static boolean isBinaryProject(Path file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      ByteBuffer magic = ByteBuffer.allocate(2);
+      while (magic.hasRemaining() && channel.read(magic) >= 0) {
+        continue;
+      }
+      return magic.position() == 2 && magic.get(0) == 'C' && magic.get(1) == '2';
+    }
+  }
+
+  /**
+   * Reads a binary project. Only the header and the table of contents are read through a
+   * stream. Each layer is returned as a {@link LazyLayer} holding a read-only mapping of its pixel
+   * content, which is copied out of the mapping the first time the layer's pixels are needed. The
+   * mappings stay valid if the file is deleted or replaced, but not if it is overwritten in place.
+   * @param file - binary project file.
+   * @return the canvas content (width, height and maxValue) followed by the layers of the
+   *         project, in the form taken by {@link CollageModel#loadProject}.
+   * @throws IllegalArgumentException - if the file is not a valid binary project.
+   * @throws IOException - if the file cannot be read.
+   */
+  public static LinkedHashMap[] read(Path file) throws IllegalArgumentException, IOException {
+    LinkedHashMap<String, Integer> canvasContent = new LinkedHashMap<>();
+    LinkedHashMap<String, ILayer> projectContentMap = new LinkedHashMap<>();
+
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      DataInputStream header = new DataInputStream(new BufferedInputStream(
+              Channels.newInputStream(channel)));
+      try {
+        if (header.readByte() != 'C' || header.readByte() != '2') {
+          throw new IllegalArgumentException("Invalid Collage file: binary file should begin "
+                  + "with C2");
+        }
+        int version = header.readInt();
+        if (version != VERSION) {
+          throw new IllegalArgumentException("Unsupported binary project version " + version);
+        }
+        int width = header.readInt();
+        int height = header.readInt();
+        int maxValue = header.readInt();
+        int layerCount = header.readInt();
+        if (width < 0 || height < 0 || layerCount < 0) {
+          throw new IllegalArgumentException("Invalid Collage file: negative dimensions");
+        }
+        if (maxValue < 1 || maxValue > RasterLayer.MAX_COMPONENT) {
+          throw new IllegalArgumentException("Invalid Collage file: max value should be between 1 "
+                  + "and " + RasterLayer.MAX_COMPONENT);
+        }
+        canvasContent.put("width", width);
+        canvasContent.put("height", height);
+        canvasContent.put("maxValue", maxValue);
+
+        long layerLength = (long) width * height * Integer.BYTES;
+        String[] names = new String[layerCount];
+        Filter[] filters = new Filter[layerCount];
+        long[] offsets = new long[layerCount];
+        Set<String> seen = new HashSet<>();
+        for (int i = 0; i < layerCount; i++) {
+          names[i] = header.readUTF();
+          if (!seen.add(names[i])) {
+            throw new IllegalArgumentException("Invalid Collage file: duplicate layer "
+                    + names[i]);
+          }
+          filters[i] = stringToFilterOption(header.readUTF());
+          offsets[i] = header.readLong();
+          long length = header.readLong();
+          if (length != layerLength || offsets[i] < 0
+                  || offsets[i] + length > channel.size()) {
+            throw new IllegalArgumentException("Invalid Collage file: layer " + names[i]
+                    + " does not match the canvas");
+          }
+        }
+
+        for (int i = 0; i < layerCount; i++) {
+          // mapping does not read the file; the pages are only read when the layer is decoded
+          MappedByteBuffer chunk = channel.map(FileChannel.MapMode.READ_ONLY, offsets[i],
+                  layerLength);
+          projectContentMap.put(names[i], new LazyLayer(filters[i], height, width, () -> {
+            int[] raster = new int[width * height];
+            chunk.duplicate().asIntBuffer().get(raster);
+            return raster;
+          }));
+        }
+      } catch (EOFException e) {
+        throw new IllegalArgumentException("Invalid Collage file: file ended early");
+      }
+    }
+
+    LinkedHashMap[] projectContent = {canvasContent, projectContentMap};
+    return projectContent;
+  }
+
+  /**
+   * Writes a binary project.
+   * @param out - stream the project is written to. It is flushed but not closed.
+   * @param width - width of the canvas.
+   * @param height - height of the canvas.
+   * @param maxValue - max value of the project.
+   * @param layers - layers of the project, bottom first.
+   * @param premultiplied - true if the layers are stored premultiplied, in which case they are
+   *                      written with straight colors.
+   * @throws IOException - if the stream cannot be written to.
+   */
+  static void write(OutputStream out, int width, int height, int maxValue,
+                    Map<String, ILayer> layers, boolean premultiplied) throws IOException {
+    long layerLength = (long) width * height * Integer.BYTES;
+    // entries are the same size whatever their offsets, so the table is measured first
+    long dataStart = HEADER_SIZE + tableOfContents(layers, 0, layerLength).length;
+
+    DataOutputStream data = new DataOutputStream(out);
+    data.writeByte('C');
+    data.writeByte('2');
+    data.writeInt(VERSION);
+    data.writeInt(width);
+    data.writeInt(height);
+    data.writeInt(maxValue);
+    data.writeInt(layers.size());
+    data.write(tableOfContents(layers, dataStart, layerLength));
+
+    ByteBuffer chunk = ByteBuffer.allocate(BUFFER_SIZE);
+    for (ILayer layer : layers.values()) {
+      writeRaster(data, layer.getRaster(), width * height, premultiplied, chunk);
+    }
+    data.flush();
+  }
+
+  /**
+   * Writes the pixel content of a layer as one big-endian packed ARGB int per pixel.
+   * @param out - stream the pixels are written to.
+   * @param raster - packed pixels of the layer.
+   * @param length - number of pixels to be written.
+   * @param premultiplied - true if the pixels are premultiplied, in which case they are written
+   *                      with straight colors.
+   * @param chunk - buffer the pixels are gathered in before being written, empty when the
+   *              method returns.
+   * @throws IOException - if the stream cannot be written to.
+   */
+  static void writeRaster(OutputStream out, int[] raster, int length, boolean premultiplied,
+                          ByteBuffer chunk) throws IOException {
+    for (int i = 0; i < length; i++) {
+      if (!chunk.hasRemaining()) {
+        out.write(chunk.array(), 0, chunk.position());
+        chunk.clear();
+      }
+      chunk.putInt(premultiplied ? RasterLayer.unpremultiply(raster[i]) : raster[i]);
+    }
+    out.write(chunk.array(), 0, chunk.position());
+    chunk.clear();
+  }
+
+  /**
+   * Encodes the table of contents, with layers stored one after the other.
+   * @param layers - layers of the project, bottom first.
+   * @param dataStart - offset of the pixel content of the first layer.
+   * @param layerLength - length in bytes of the pixel content of a layer.
+   * @return the encoded table of contents.
+   * @throws IOException - if a name is too long to be encoded.
+   */
+  private static byte[] tableOfContents(Map<String, ILayer> layers, long dataStart,
+                                        long layerLength) throws IOException {
+    ByteArrayOutputStream table = new ByteArrayOutputStream();
+    DataOutputStream entries = new DataOutputStream(table);
+    long offset = dataStart;
+    for (Map.Entry<String, ILayer> layer : layers.entrySet()) {
+      entries.writeUTF(layer.getKey());
+      entries.writeUTF(layer.getValue().getFilterOption().getValue());
+      entries.writeLong(offset);
+      entries.writeLong(layerLength);
+      offset += layerLength;
+    }
+    return table.toByteArray();
+  }
+
+  /**
+   * Finds the given filter after looking at it's filter command as a string.
+   * @param filterCommand - a string corresponding to a respective filter command.
+   * @return - a Filter corresponding to the string provided.
+   * @throws IllegalArgumentException - if no filter has the given name.
+   */
+  private static Filter stringToFilterOption(String filterCommand)
+          throws IllegalArgumentException {
+    for (Filter fil : Filter.values()) {
+      if (fil.getValue().equals(filterCommand)) {
+        return fil;
+      }
+    }
+    throw new IllegalArgumentException("Filter does not exist");
+  }
+}
@@ -1,8 +1,13 @@
 package model;
 
+import java.awt.Rectangle;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.function.BooleanSupplier;
 
 /**
  * This interface represents the operations that can be applied to a given project
@@ -21,9 +26,11 @@ public interface CollageModel {
   /**
    * Loads a project to the program.
    * @param projectContent - Contains the height, the width, and the max value, the layers and the
-   *                       content of each layer.
+   *                       content of each layer. Layers given as {@link LazyLayer}s are only
+   *                       decoded when their pixels are first needed.
    * @throws IllegalStateException - if a project has already been loaded.
-   * @throws IllegalArgumentException - if project is not of proper format.
+   * @throws IllegalArgumentException - if project is not of proper format, or its max value is
+   *                                  larger than {@value RasterLayer#MAX_COMPONENT}.
    */
   void loadProject(LinkedHashMap[] projectContent) throws IllegalStateException,
           IllegalArgumentException;
@@ -33,6 +40,45 @@ public interface CollageModel {
    */
   String saveProject() throws IOException;
 
+  /**
+   * Saves the project to a stream, in the same format as {@link #saveProject()}. The project is
+   * written through a fixed-size buffer as it is encoded, so the whole file is never held in
+   * memory. The stream is flushed but not closed.
+   * @param out - stream the project is written to.
+   * @throws IOException - if the stream cannot be written to.
+   * @throws IllegalStateException - if no project has been loaded.
+   * @throws IllegalArgumentException - if the project has no background layer.
+   */
+  void saveProject(OutputStream out) throws IOException, IllegalStateException,
+          IllegalArgumentException;
+
+  /**
+   * Saves the project to a stream in the binary format described by {@link BinaryProjectFormat},
+   * which stores the pixel content of each layer as raw packed pixels. The stream is flushed but
+   * not closed.
+   * @param out - stream the project is written to.
+   * @throws IOException - if the stream cannot be written to.
+   * @throws IllegalStateException - if no project has been loaded.
+   * @throws IllegalArgumentException - if the project has no background layer.
+   */
+  void saveBinaryProject(OutputStream out) throws IOException, IllegalStateException,
+          IllegalArgumentException;
+
+  /**
+   * Saves the project to a stream in the journaled format described by
+   * {@link JournalProjectFormat}. A full save writes a new journal holding every layer. Otherwise
+   * only the layers whose pixels changed and the filters that changed since the project was
+   * loaded or last saved this way are written, to be appended to the journal the project was
+   * loaded from or last saved to. The stream is flushed but not closed.
+   * @param out - stream the project is written to.
+   * @param full - true to write a new journal, false to write only the changes.
+   * @throws IOException - if the stream cannot be written to.
+   * @throws IllegalStateException - if no project has been loaded.
+   * @throws IllegalArgumentException - if the project has no background layer.
+   */
+  void saveProjectChanges(OutputStream out, boolean full) throws IOException,
+          IllegalStateException, IllegalArgumentException;
+
   /**
    * Allows a user to add a new layer to the project.
    * @param layerName - user specified layer name.
@@ -49,6 +95,21 @@ public interface CollageModel {
   void addImageToLayer(String layerName, ArrayList<ArrayList<IPixels>> imageContent, int xPos,
                        int yPos, String fileForm);
 
+  /**
+   * Adds a new image to the layer. The image may be of any size; only the part of it that lands
+   * on the canvas is composited onto the layer, and an image entirely off the canvas leaves the
+   * layer unchanged.
+   * @param layerName - user specified layer name.
+   * @param imageContent - packed image content, of any width and height. Readers usually hand
+   *                     over only the part of the image that fits on the canvas.
+   * @param xPos - x-coordinate of where the user would like the image to be placed.
+   * @param yPos - y-coordinate of where the user would like the image to be placed.
+   * @param fileForm - file extension of the image.
+   * @throws IllegalArgumentException - if the layer does not exist.
+   */
+  void addImageToLayer(String layerName, ILayer imageContent, int xPos, int yPos,
+                       String fileForm);
+
   /**
    * Applies a filter to an existing layer.
    * @param layerName - user specified layer name.
@@ -58,8 +119,62 @@ public interface CollageModel {
 
   /**
    * Save the filtered image to the project file.
+   * @return rows of pixels of the rendered image.
+   */
+  List saveImage() throws IOException;
+
+  /**
+   * Renders the image as {@link #saveImage()} does and returns its pixels without copying them.
+   * The red, green and blue components of each packed pixel already carry the pixel's alpha, so
+   * the raster can back a RGB image directly.
+   * @return packed pixels of the rendered image, one int per pixel in row-major order. The array
+   *         belongs to the model and is overwritten by the next render.
+   */
+  int[] saveImageRaster();
+
+  /**
+   * Renders the image as {@link #saveImageRaster()} does, giving up as soon as the render is no
+   * longer wanted. The check is made before each band of rows is rendered. A cancelled render
+   * leaves the model as if it had not been started, so the next render does the same work again.
+   * @param cancelled - tells whether the render is no longer wanted.
+   * @return packed pixels of the rendered image. The array belongs to the model and is
+   *         overwritten by the next render.
+   * @throws CancellationException - if the render was cancelled.
+   */
+  int[] saveImageRaster(BooleanSupplier cancelled) throws CancellationException;
+
+  /**
+   * Renders a reduced image made of every factor-th pixel of every factor-th row of the image, to
+   * give a quick impression of the project before it is fully rendered. Only the sampled pixels of
+   * each layer are composited and filtered, so the cost falls with the square of the factor. The
+   * cached composites are left untouched.
+   * @param factor - distance between the sampled pixels, 1 for every pixel.
+   * @return packed pixels of the reduced image, whose width and height are those of the canvas
+   *         divided by the factor, rounded up.
+   * @throws IllegalArgumentException - if the factor is less than 1.
+   */
+  int[] saveSubsampledImageRaster(int factor) throws IllegalArgumentException;
+
+  /**
+   * Returns the part of the canvas that changed in the most recent call to saveImage, so that a
+   * preview only needs to refresh those pixels.
+   * @return the changed region, empty if nothing changed.
+   */
+  Rectangle getLastRenderedRegion();
+
+  /**
+   * Takes a snapshot of the project as it is now. The snapshot is not affected by later edits, so
+   * it can be read, rendered or saved on another thread while the project keeps being edited.
+   * The pixels of the layers are shared with the project until it changes them.
+   * @return the snapshot, to be closed once it is no longer read.
+   */
+  ProjectSnapshot snapshot();
+
+  /**
+   * Lists the layers of the project. Listing layers does not touch their pixel content.
+   * @return the names of the layers, bottom first.
    */
-  ArrayList saveImage() throws IOException;
+  List<String> getLayerNames();
 
   /**
    * Returns the height of the canvas.
@@ -1,33 +1,107 @@
 package model;
 
+import java.awt.Rectangle;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
 
 /**
  * Contains the program instructions. Generates instructions that manipulate the created image.
  * Includes functionality which allow the creation of images and projects.
+ *
+ * <p>The model can be used from several threads at once. Edits hold a write lock and queries a read
+ * lock on the project, while renders and saves work from a {@link ProjectSnapshot} taken under the
+ * lock, so a project can be edited while it is being rendered or saved. Only one render runs at a
+ * time, and edits that change how every layer is rendered, such as creating or loading a project,
+ * wait for the render under way to finish.
  */
 public class CollageModelImpl implements CollageModel {
 
+  private static final AlphaCompositor PREMULTIPLIED_COMPOSITOR =
+          new PremultipliedAlphaCompositor();
+
   private boolean projectLoaded;
   private LinkedHashMap<String, ILayer> layers;
   private int maxValue;
   private int width;
   private int height;
   private String fileExtension;
-
+  private LinkedHashMap<String, int[]> composites;
+  private LinkedHashMap<String, Rectangle> dirtyRegions;
+  private int[] renderedImage;
+  private volatile Rectangle lastRenderedRegion;
+  private final int parallelism;
+  private final int bandHeight;
+  private final ForkJoinPool renderPool;
+  private final ReentrantReadWriteLock projectLock;
+  // held for the whole of a render, guards the cached composites and the rendered image
+  private final Object renderLock;
+  // layers held by open snapshots, with the number of snapshots holding each
+  private final IdentityHashMap<ILayer, Integer> sharedLayers;
+  private AlphaCompositor compositor;
+  private FilterKernel filterKernel;
+  private boolean premultiplied;
+  private int[] filterScratch;
+  private LinkedHashSet<String> unsavedLayers;
+  private LinkedHashSet<String> unsavedFilters;
 
   /**
    * Initializes fields that represent different components of the image creation application.
-   * Fields are initialized to default value respective to their representation.
+   * Fields are initialized to default value respective to their representation. Rendering uses
+   * every available processor.
    */
   public CollageModelImpl() {
+    this(Runtime.getRuntime().availableProcessors(), 64);
+  }
+
+  /**
+   * Initializes fields that represent different components of the image creation application.
+   * Compositing, filtering and flattening split the canvas into bands of rows which are processed
+   * in parallel. The result is identical to processing the canvas on a single thread.
+   * @param parallelism - number of threads used to render, 1 renders on the calling thread.
+   * @param bandHeight - number of rows processed together by a single thread.
+   * @throws IllegalArgumentException - if either value is less than 1.
+   */
+  public CollageModelImpl(int parallelism, int bandHeight) throws IllegalArgumentException {
+    if (parallelism < 1 || bandHeight < 1) {
+      throw new IllegalArgumentException("Parallelism and band height must be positive.");
+    }
+    this.parallelism = parallelism;
+    this.bandHeight = bandHeight;
+    // the pool starts its threads on first use
+    this.renderPool = parallelism == 1 ? null : new ForkJoinPool(parallelism);
+    this.projectLock = new ReentrantReadWriteLock();
+    this.renderLock = new Object();
+    this.sharedLayers = new IdentityHashMap<ILayer, Integer>();
+    this.compositor = new FixedPointAlphaCompositor();
+    this.filterKernel = FilterKernel.fastest();
+    this.premultiplied = false;
+    this.filterScratch = null;
     this.layers = new LinkedHashMap<String, ILayer>();
     this.projectLoaded = false;
     this.maxValue = 255;
     this.height = 0;
     this.width = 0;
     this.fileExtension = "ppm";
+    this.composites = new LinkedHashMap<String, int[]>();
+    this.dirtyRegions = new LinkedHashMap<String, Rectangle>();
+    this.renderedImage = null;
+    this.lastRenderedRegion = new Rectangle();
+    this.unsavedLayers = new LinkedHashSet<String>();
+    this.unsavedFilters = new LinkedHashSet<String>();
 
   }
 
@@ -37,11 +111,20 @@ public class CollageModelImpl implements CollageModel {
       throw new IllegalArgumentException("Height and width must be positive integer.");
     }
 
-    this.height = height;
-    this.width = width;
-    this.layers.put("default-background", new Layer().addNewLayer(Filter.NORMAL, this.height,
-            this.width, this.maxValue, this.maxValue));
-    this.projectLoaded = true;
+    synchronized (this.renderLock) {
+      this.projectLock.writeLock().lock();
+      try {
+        this.height = height;
+        this.width = width;
+        this.layers.put("default-background", new RasterLayer().addNewLayer(Filter.NORMAL,
+                this.height, this.width, this.maxValue, this.maxValue));
+        clearComposites();
+        this.unsavedLayers.addAll(this.layers.keySet());
+        this.projectLoaded = true;
+      } finally {
+        this.projectLock.writeLock().unlock();
+      }
+    }
 
   }
 
@@ -49,146 +132,310 @@ public class CollageModelImpl implements CollageModel {
   public void loadProject(LinkedHashMap[] projectContent) throws IllegalStateException,
           IllegalArgumentException {
 
-    if (projectLoaded) {
-      throw new IllegalStateException("Currently working on a project. Quit this session and " +
-              "load another project.");
+    synchronized (this.renderLock) {
+      this.projectLock.writeLock().lock();
+      try {
+        if (projectLoaded) {
+          throw new IllegalStateException("Currently working on a project. Quit this session " +
+                  "and load another project.");
+        }
+        LinkedHashMap<String, Integer> canvasContent = projectContent[0];
+        LinkedHashMap<String, ILayer> layerContent = projectContent[1];
+        if (canvasContent.get("maxValue") > RasterLayer.MAX_COMPONENT) {
+          throw new IllegalArgumentException("Max value cannot be larger than "
+                  + RasterLayer.MAX_COMPONENT + ".");
+        }
+
+        this.height = canvasContent.get("height");
+        this.width = canvasContent.get("width");
+        this.maxValue = canvasContent.get("maxValue");
+
+        for (Object o : layerContent.keySet()) {
+          ILayer layer = layerContent.get(o);
+          // lazy layers stay undecoded until their pixels are needed, unless they must be
+          // converted
+          if (!(layer instanceof LazyLayer)) {
+            layer = RasterLayer.from(layer);
+          }
+          if (this.premultiplied) {
+            convertAlpha(layer.getRaster(), true);
+          }
+          this.layers.put((String)o, layer);
+        }
+        clearComposites();
+        this.unsavedLayers.clear();
+        this.unsavedFilters.clear();
+
+        this.projectLoaded = true;
+      } finally {
+        this.projectLock.writeLock().unlock();
+      }
     }
-    LinkedHashMap<String, Integer> canvasContent = projectContent[0];
-    LinkedHashMap<String, ILayer> layerContent = projectContent[1];
+  }
 
-    this.height = canvasContent.get("height");
-    this.width = canvasContent.get("width");
-    this.maxValue = canvasContent.get("maxValue");
+  @Override
+  public String saveProject() throws IllegalArgumentException, IllegalStateException {
 
-    for (Object o : layerContent.keySet()) {
-      this.layers.put((String)o, layerContent.get(o));
+    ByteArrayOutputStream projectContent = new ByteArrayOutputStream();
+    try {
+      saveProject(projectContent);
+    } catch (IOException e) {
+      // writing to memory does not fail
+      throw new IllegalStateException("Unable to save project.", e);
     }
+    return new String(projectContent.toByteArray(), StandardCharsets.UTF_8);
 
-    this.projectLoaded = true;
   }
 
   @Override
-  public String saveProject() throws IllegalArgumentException, IllegalStateException {
+  public void saveProject(OutputStream out) throws IOException, IllegalArgumentException,
+          IllegalStateException {
+
+    // the project is written from a snapshot, so it can be edited meanwhile
+    ProjectSnapshot project = snapshot();
+    try {
+      if (!project.isProjectLoaded()) {
+        throw new IllegalStateException("No Project has been loaded");
+      }
+
+      if (!project.layers().containsKey("default-background")) {
+        throw new IllegalArgumentException("Invalid Project. Unable to save");
+      }
 
-    if (!projectLoaded) {
-      throw new IllegalStateException("No Project has been loaded");
+      TextEncoder projectContent = new TextEncoder(out);
+      projectContent.write("C1\n");
+      projectContent.write(project.getWidth()).write(' ').write(project.getHeight()).write('\n');
+      projectContent.write(project.maxValue()).write('\n');
+
+      for (Map.Entry<String, ILayer> layer : project.layers().entrySet()) {
+        projectContent.write(layer.getKey()).write(' ');
+        projectContent.write(layer.getValue().getFilterOption().getValue()).write('\n');
+        writePixelContent(layer.getValue().getRaster(), project, projectContent);
+      }
+      projectContent.flush();
+    } finally {
+      project.close();
     }
 
-    if (!this.layers.containsKey("default-background")) {
-      throw new IllegalArgumentException("Invalid Project. Unable to save");
+  }
+
+  @Override
+  public void saveBinaryProject(OutputStream out) throws IOException, IllegalArgumentException,
+          IllegalStateException {
+
+    ProjectSnapshot project = snapshot();
+    try {
+      if (!project.isProjectLoaded()) {
+        throw new IllegalStateException("No Project has been loaded");
+      }
+
+      if (!project.layers().containsKey("default-background")) {
+        throw new IllegalArgumentException("Invalid Project. Unable to save");
+      }
+
+      BinaryProjectFormat.write(out, project.getWidth(), project.getHeight(),
+              project.maxValue(), project.layers(), project.isPremultiplied());
+    } finally {
+      project.close();
     }
 
-    String projectContent = "";
-    projectContent += "C1\n";
-    projectContent += width + " " + height + "\n";
-    projectContent += maxValue + "\n";
+  }
+
+  @Override
+  public void saveProjectChanges(OutputStream out, boolean full) throws IOException,
+          IllegalArgumentException, IllegalStateException {
+
+    ProjectSnapshot project;
+    LinkedHashSet<String> changedLayers;
+    LinkedHashSet<String> changedFilters;
+    // the changes are taken along with the snapshot, so edits made while writing are kept for the
+    // next save
+    this.projectLock.writeLock().lock();
+    try {
+      if (!projectLoaded) {
+        throw new IllegalStateException("No Project has been loaded");
+      }
+
+      if (!this.layers.containsKey("default-background")) {
+        throw new IllegalArgumentException("Invalid Project. Unable to save");
+      }
 
-    for (String layers : this.layers.keySet()) {
-      projectContent += layers + " ";
-      projectContent += this.layers.get(layers).getFilterOption().getValue() + "\n";
-      projectContent += getPixelContent(this.layers.get(layers).getPixels());
+      project = snapshotLocked();
+      changedLayers = this.unsavedLayers;
+      changedFilters = this.unsavedFilters;
+      this.unsavedLayers = new LinkedHashSet<String>();
+      this.unsavedFilters = new LinkedHashSet<String>();
+    } finally {
+      this.projectLock.writeLock().unlock();
     }
 
-    return projectContent;
+    boolean written = false;
+    try {
+      JournalProjectFormat.write(out, project.getWidth(), project.getHeight(),
+              project.maxValue(), project.layers(),
+              full ? project.layers().keySet() : changedLayers, changedFilters,
+              project.isPremultiplied(), full);
+      written = true;
+    } finally {
+      project.close();
+      if (!written) {
+        // the changes are still unsaved
+        this.projectLock.writeLock().lock();
+        try {
+          this.unsavedLayers.addAll(changedLayers);
+          this.unsavedFilters.addAll(changedFilters);
+        } finally {
+          this.projectLock.writeLock().unlock();
+        }
+      }
+    }
 
   }
 
   @Override
   public void addLayer(String layerName) {
 
-    if (!projectLoaded) {
-      throw new IllegalStateException("No Project has been loaded - load or create a project " +
-              "to begin working.");
-    }
+    this.projectLock.writeLock().lock();
+    try {
+      if (!projectLoaded) {
+        throw new IllegalStateException("No Project has been loaded - load or create a project " +
+                "to begin working.");
+      }
 
-    if (this.layers.containsKey(layerName)) {
-      throw new IllegalArgumentException("Layer already exisits");
-    }
+      if (this.layers.containsKey(layerName)) {
+        throw new IllegalArgumentException("Layer already exisits");
+      }
 
-    this.layers.put(layerName, new Layer().addNewLayer(Filter.NORMAL, this.height,
-            this.width, this.maxValue, 0));
+      ILayer layer = new RasterLayer().addNewLayer(Filter.NORMAL, this.height, this.width,
+              this.maxValue, 0);
+      if (this.premultiplied) {
+        convertAlpha(layer.getRaster(), true);
+      }
+      this.layers.put(layerName, layer);
+      this.unsavedLayers.add(layerName);
+      markDirty(layerName, new Rectangle(0, 0, this.width, this.height));
+    } finally {
+      this.projectLock.writeLock().unlock();
+    }
 
   }
 
   @Override
   public void addImageToLayer(String layerName, ArrayList<ArrayList<IPixels>> imageContent,
                               int xPos, int yPos, String fileForm) {
+    addImageToLayer(layerName, new RasterLayer().changePixels(imageContent), xPos, yPos,
+            fileForm);
+  }
 
-    if (!this.layers.containsKey(layerName)) {
-      throw new IllegalArgumentException("Layer does not exists. Try Again");
-    }
+  @Override
+  public void addImageToLayer(String layerName, ILayer imageContent, int xPos, int yPos,
+                              String fileForm) {
 
-    this.fileExtension = fileForm;
+    this.projectLock.writeLock().lock();
+    try {
+      if (!this.layers.containsKey(layerName)) {
+        throw new IllegalArgumentException("Layer does not exists. Try Again");
+      }
 
-    ArrayList backgroundLayer = this.layers.get(layerName).getPixels();
-    this.layers.get(layerName).changePixels(computeTransparency(imageContent, backgroundLayer,
-            xPos, yPos));
+      this.fileExtension = fileForm;
+
+      Rectangle region = new Rectangle(xPos, yPos, imageContent.getWidth(),
+              imageContent.getHeight()).intersection(new Rectangle(0, 0, this.width,
+              this.height));
+      if (region.isEmpty()) {
+        return;
+      }
+
+      int[] imageRaster = imageContent.getRaster();
+      if (this.premultiplied) {
+        imageRaster = imageRaster.clone();
+        convertAlpha(imageRaster, true);
+      }
+
+      int[] image = imageRaster;
+      int[] backgroundLayer = writableLayer(layerName).getRaster();
+      forEachBand(region, band -> computeTransparency(image, imageContent.getWidth(), xPos,
+              yPos, backgroundLayer, backgroundLayer, band));
+      this.unsavedLayers.add(layerName);
+      markDirty(layerName, region);
+    } finally {
+      this.projectLock.writeLock().unlock();
+    }
 
   }
 
   @Override
   public void setFilter(String layerName, String filterOption) throws IllegalArgumentException {
 
-    if (!this.layers.containsKey(layerName)) {
-      throw new IllegalArgumentException("Layer does not exist.");
-    }
+    this.projectLock.writeLock().lock();
+    try {
+      if (!this.layers.containsKey(layerName)) {
+        throw new IllegalArgumentException("Layer does not exist.");
+      }
 
-    if (filterOption.equals("normal") || filterOption.equals("red-component") ||
-            filterOption.equals("green-component") || filterOption.equals("blue-component") ||
-            filterOption.equals("brighten-value") || filterOption.equals("darken-value") ||
-            filterOption.equals("brighten-intensity") || filterOption.equals("darken-intensity")
-            || filterOption.equals("brighten-luma") || filterOption.equals("darken-luma")
-            || filterOption.equals("blending-difference") ||
-            filterOption.equals("blending-multiply") || filterOption.equals("blending-screen")) {
+      if (filterOption.equals("normal") || filterOption.equals("red-component") ||
+              filterOption.equals("green-component") || filterOption.equals("blue-component") ||
+              filterOption.equals("brighten-value") || filterOption.equals("darken-value") ||
+              filterOption.equals("brighten-intensity") ||
+              filterOption.equals("darken-intensity") || filterOption.equals("brighten-luma") ||
+              filterOption.equals("darken-luma") || filterOption.equals("blending-difference") ||
+              filterOption.equals("blending-multiply") || filterOption.equals("blending-screen")) {
 
 
-      Filter filter = stringToFilterOption(filterOption);
-      this.layers.get(layerName).changeFilterOption(filter);
+        // snapshots keep the filter the layer had, so it is changed in place even when shared
+        Filter filter = stringToFilterOption(filterOption);
+        this.layers.get(layerName).changeFilterOption(filter);
+        this.unsavedFilters.add(layerName);
+        markDirty(layerName, new Rectangle(0, 0, this.width, this.height));
 
-    } else {
-      throw new IllegalArgumentException("Filter does not exist");
+      } else {
+        throw new IllegalArgumentException("Filter does not exist");
+      }
+    } finally {
+      this.projectLock.writeLock().unlock();
     }
 
   }
 
   /**
    * Makes a call to the respective function based on the filter operation provided by the user.
-   * @param pixelContentList - an array list of the current layer of pixels.
-   * @param backgroundPixels - an array list of the background layer of pixels.
+   * @param pixelContentList - packed pixels of the current layer.
+   * @param backgroundPixels - packed pixels of the background layer.
    * @param filterOption - user specified filter operation.
-   * @return - an array list of the computed layer after the filter operation has been applied to
+   * @param offset - index of the first pixel the filter is applied to.
+   * @param length - number of pixels the filter is applied to.
+   * @return - packed pixels of the computed layer after the filter operation has been applied to
    *         the layer.
    */
-  private ArrayList filterOptionImpl(ArrayList<ArrayList<IPixels>> pixelContentList,
-                                  ArrayList<ArrayList<IPixels>> backgroundPixels,
-                                      String filterOption) {
+  private int[] filterOptionImpl(int[] pixelContentList, int[] backgroundPixels,
+                                 String filterOption, int offset, int length) {
     switch (filterOption) {
       case "normal":
         break;
       case "red-component":
-        return filterComponent(pixelContentList, "red");
+        return filterComponent(pixelContentList, "red", offset, length);
       case "green-component":
-        return filterComponent(pixelContentList, "green");
+        return filterComponent(pixelContentList, "green", offset, length);
       case "blue-component":
-        return filterComponent(pixelContentList, "blue");
+        return filterComponent(pixelContentList, "blue", offset, length);
       case "brighten-value":
-        return changeComponentValue(pixelContentList, "brighten");
+        return changeComponentValue(pixelContentList, "brighten", offset, length);
       case "darken-value":
-        return changeComponentValue(pixelContentList, "darken");
+        return changeComponentValue(pixelContentList, "darken", offset, length);
       case "brighten-intensity":
-        return changeComponentIntensity(pixelContentList, "brighten");
+        return changeComponentIntensity(pixelContentList, "brighten", offset, length);
       case "darken-intensity":
-        return changeComponentIntensity(pixelContentList, "darken");
+        return changeComponentIntensity(pixelContentList, "darken", offset, length);
       case "brighten-luma":
-        return changeComponentLuma(pixelContentList, "brighten");
+        return changeComponentLuma(pixelContentList, "brighten", offset, length);
       case "darken-luma":
-        return changeComponentLuma(pixelContentList, "darken");
+        return changeComponentLuma(pixelContentList, "darken", offset, length);
       case "blending-difference":
-        return blendingFilterOption(pixelContentList, backgroundPixels);
+        return blendingFilterOption(pixelContentList, backgroundPixels, offset, length);
       case "blending-screen":
-        return blendingOption(pixelContentList, backgroundPixels, "screen");
+        return blendingOption(pixelContentList, backgroundPixels, "screen", offset, length);
       case "blending-multiply":
-        return blendingOption(pixelContentList, backgroundPixels, "multiply");
+        return blendingOption(pixelContentList, backgroundPixels, "multiply", offset, length);
       default:
         throw new IllegalArgumentException("filter option does not exist");
     }
@@ -197,264 +444,634 @@ public class CollageModelImpl implements CollageModel {
 
   }
 
+  /**
+   * Renders the project. The composite of every layer is cached along with the region of each
+   * layer changed since the last render, so only the changed parts of the changed layers and of
+   * the layers above them are composited again. Every row is composited, filtered and, for the top
+   * layer, flattened in a single pass while it is still in the processor's cache, and the result
+   * is written into an image buffer that is reused from one render to the next. The returned image
+   * is shared with the cache and must not be modified. The project is rendered from a snapshot, so
+   * it can be edited while the render runs; those edits show in the next render.
+   * @return rows of pixels of the rendered image.
+   */
   @Override
-  public ArrayList saveImage() {
+  public List saveImage() {
 
+    synchronized (this.renderLock) {
+      return new RasterLayer(Filter.NORMAL, this.height, this.width, saveImageRaster())
+              .getPixels();
+    }
 
-    ArrayList<ArrayList<IPixels>> backgroundLayer = this.layers.get("default-background").
-            getPixels();
+  }
 
-    ArrayList<ArrayList<IPixels>> imageToPPM = new ArrayList<>();
+  @Override
+  public int[] saveImageRaster() {
 
-    for (String layers : this.layers.keySet()) {
+    return saveImageRaster(() -> false);
 
-      if (layers.equals("default-background")) {
-        continue;
+  }
 
-      } else {
-        ArrayList<ArrayList<IPixels>> computedLayer = computeTransparency(this.layers.get(layers)
-                .getPixels(), backgroundLayer, 0, 0);
-        ArrayList<ArrayList<IPixels>> filteredLayer = filterOptionImpl(computedLayer,
-                backgroundLayer, this.layers.get(layers).getFilterOption().getValue());
-        imageToPPM = writeToImage(filteredLayer);
-        backgroundLayer = this.layers.get(layers).getPixels();
+  @Override
+  public int[] saveImageRaster(BooleanSupplier cancelled) throws CancellationException {
+
+    synchronized (this.renderLock) {
+      ProjectSnapshot project;
+      LinkedHashMap<String, Rectangle> changes;
+      // the snapshot and the regions changed up to it are taken together, later edits mark their
+      // regions for the next render
+      this.projectLock.writeLock().lock();
+      try {
+        project = snapshotLocked();
+        changes = this.dirtyRegions;
+        this.dirtyRegions = new LinkedHashMap<String, Rectangle>();
+      } finally {
+        this.projectLock.writeLock().unlock();
       }
 
-    }
+      try {
+        List<RenderStage> stages = new ArrayList<RenderStage>();
+        Rectangle region = planComposite(project, changes, stages);
 
-    return imageToPPM;
+        if (this.renderedImage == null) {
+          this.renderedImage = new int[this.height * this.width];
+          region = new Rectangle(0, 0, this.width, this.height);
+        }
+        int[] composite = this.composites.getOrDefault(topLayer(project),
+                project.layer("default-background").getRaster());
+        AtomicBoolean aborted = new AtomicBoolean(false);
+        forEachBand(region, band -> {
+          if (aborted.get() || cancelled.getAsBoolean()) {
+            aborted.set(true);
+            return;
+          }
+          renderBand(stages, composite, band);
+        });
+        if (aborted.get()) {
+          // rendering a band again gives the same result, so the whole region is simply redone
+          this.projectLock.writeLock().lock();
+          try {
+            markDirty("default-background", region);
+          } finally {
+            this.projectLock.writeLock().unlock();
+          }
+          throw new CancellationException("Rendering was cancelled.");
+        }
+        this.lastRenderedRegion = region;
+
+        return this.renderedImage;
+      } finally {
+        project.close();
+      }
+    }
 
   }
 
   @Override
-  public int getHeight() {
-    return this.height;
+  public Rectangle getLastRenderedRegion() {
+    return new Rectangle(this.lastRenderedRegion);
   }
 
-  @Override
-  public int getWidth() {
-    return this.width;
+  /**
+   * Works out which part of each layer's composite has to be computed again, starting from the
+   * background. A layer's composite changes wherever the layer itself or any layer beneath it has
+   * changed since the last render, and everywhere if it has no cached composite yet.
+   * @param project - snapshot of the project being rendered.
+   * @param changes - region of each layer changed since the last render.
+   * @param stages - list the layers whose composite has to be computed are added to, bottom first.
+   * @return the region of the canvas whose composite has changed.
+   */
+  private Rectangle planComposite(ProjectSnapshot project, Map<String, Rectangle> changes,
+                                  List<RenderStage> stages) {
+
+    Rectangle canvas = new Rectangle(0, 0, this.width, this.height);
+    int canvasSize = this.height * this.width;
+    Map<String, ILayer> layers = project.layers();
+    int[] backgroundLayer = project.layer("default-background").getRaster();
+    Rectangle changed = union(new Rectangle(), changes.get("default-background"));
+
+    for (String layer : layers.keySet()) {
+
+      if (layer.equals("default-background")) {
+        continue;
+      }
+
+      changed = union(changed, changes.get(layer));
+      int[] computedLayer = this.composites.get(layer);
+      if (computedLayer == null) {
+        computedLayer = new int[canvasSize];
+        this.composites.put(layer, computedLayer);
+        changed = canvas;
+      }
+
+      String filterOption = layers.get(layer).getFilterOption().getValue();
+      if (!changed.isEmpty()) {
+        stages.add(new RenderStage(layers.get(layer).getRaster(), backgroundLayer,
+                computedLayer, filterOption, changed));
+      }
+      // premultiplied backgrounds are converted into a buffer kept between renders for blending
+      if (this.premultiplied && filterOption.startsWith("blending")
+              && (this.filterScratch == null || this.filterScratch.length != canvasSize)) {
+        this.filterScratch = new int[canvasSize];
+      }
+      backgroundLayer = computedLayer;
+
+    }
+
+    return changed;
+
   }
 
-  @Override
-  public int maxValue() {
-    return this.maxValue;
+  /**
+   * Renders one band of rows. Each layer is composited over the layer beneath it and filtered one
+   * row at a time, then the rows of the top composite are flattened into the rendered image.
+   * @param stages - layers whose composite has to be computed, bottom first.
+   * @param composite - packed pixels of the top composite.
+   * @param band - rows of the canvas to be rendered.
+   */
+  private void renderBand(List<RenderStage> stages, int[] composite, Rectangle band) {
+
+    AlphaCompositor rowCompositor = rowCompositor();
+    for (RenderStage stage : stages) {
+      Rectangle area = band.intersection(stage.region);
+      if (area.isEmpty()) {
+        continue;
+      }
+
+      for (int h = area.y; h < area.y + area.height; h++) {
+        compositeRow(rowCompositor, stage.layer, stage.background, stage.composite,
+                this.filterScratch, stage.filterOption, h * this.width + area.x, area.width);
+      }
+    }
+
+    for (int h = band.y; h < band.y + band.height; h++) {
+      writeToImage(composite, this.renderedImage, h * this.width + band.x, band.width);
+    }
+  }
+
+  /**
+   * Composites a run of pixels of a layer over its background and applies the layer's filter.
+   * @param rowCompositor - arithmetic used to composite the layer.
+   * @param layer - packed pixels of the layer.
+   * @param background - packed pixels of the composite beneath the layer.
+   * @param composite - packed pixels the composite of the layer is written to.
+   * @param filterScratch - buffer the size of the composite, used by blending filters in
+   *                      premultiplied mode.
+   * @param filterOption - filter of the layer.
+   * @param offset - index of the first pixel to be composited.
+   * @param length - number of pixels to be composited.
+   */
+  private void compositeRow(AlphaCompositor rowCompositor, int[] layer, int[] background,
+                            int[] composite, int[] filterScratch, String filterOption,
+                            int offset, int length) {
+    // filters work on straight colors, so premultiplied composites are converted around them
+    boolean convert = this.premultiplied && !filterOption.equals("normal");
+    boolean blending = filterOption.startsWith("blending");
+    int[] filterBackground = convert && blending ? filterScratch : background;
+    rowCompositor.compositeRow(layer, offset, background, composite, offset, length);
+    if (convert) {
+      convertAlpha(composite, composite, offset, length, false);
+      if (blending) {
+        convertAlpha(background, filterBackground, offset, length, false);
+      }
+    }
+    filterOptionImpl(composite, filterBackground, filterOption, offset, length);
+    if (convert) {
+      convertAlpha(composite, composite, offset, length, true);
+    }
   }
 
   @Override
-  public String getFileExtension() {
-    return this.fileExtension;
+  public int[] saveSubsampledImageRaster(int factor) throws IllegalArgumentException {
+    if (factor < 1) {
+      throw new IllegalArgumentException("Subsampling factor must be positive.");
+    }
+    synchronized (this.renderLock) {
+      ProjectSnapshot project = snapshot();
+      try {
+        int sampledWidth = (this.width + factor - 1) / factor;
+        int sampledHeight = (this.height + factor - 1) / factor;
+        int sampledSize = sampledWidth * sampledHeight;
+
+        // every filter works pixel by pixel, so the sampled pixels come out as in the full render
+        AlphaCompositor rowCompositor = rowCompositor();
+        int[] background = subsample(project.layer("default-background").getRaster(), factor,
+                sampledWidth, sampledHeight);
+        int[] filterScratch = this.premultiplied ? new int[sampledSize] : null;
+        for (Map.Entry<String, ILayer> entry : project.layers().entrySet()) {
+          if (entry.getKey().equals("default-background")) {
+            continue;
+          }
+          int[] layer = subsample(entry.getValue().getRaster(), factor, sampledWidth,
+                  sampledHeight);
+          int[] composite = new int[sampledSize];
+          String filterOption = entry.getValue().getFilterOption().getValue();
+          for (int h = 0; h < sampledHeight; h++) {
+            compositeRow(rowCompositor, layer, background, composite, filterScratch,
+                    filterOption, h * sampledWidth, sampledWidth);
+          }
+          background = composite;
+        }
+
+        int[] image = new int[sampledSize];
+        writeToImage(background, image, 0, sampledSize);
+        return image;
+      } finally {
+        project.close();
+      }
+    }
   }
 
   /**
-   * Creates a string of the pixel components formatted to be outputted in a collage project format.
-   * @param pixelList - array list of pixels representing a layers pixel content.
-   * @return - a string which is correctly formatted to be displayed in a project.
+   * Picks every factor-th pixel of every factor-th row of a canvas sized raster.
+   * @param raster - packed pixels the size of the canvas.
+   * @param factor - distance between picked pixels.
+   * @param sampledWidth - number of pixels picked from each row.
+   * @param sampledHeight - number of rows picked.
+   * @return the picked pixels.
    */
-  private String getPixelContent(ArrayList<ArrayList<IPixels>> pixelList) {
-    String pixelListToString = "";
-    for (int h = 0; h < this.height; h++) {
-      for (int w = 0; w < this.width; w++) {
-        pixelListToString += pixelList.get(h).get(w).pixelToString();
+  private int[] subsample(int[] raster, int factor, int sampledWidth, int sampledHeight) {
+    int[] sampled = new int[sampledWidth * sampledHeight];
+    for (int h = 0; h < sampledHeight; h++) {
+      int source = h * factor * this.width;
+      int dest = h * sampledWidth;
+      for (int w = 0; w < sampledWidth; w++) {
+        sampled[dest + w] = raster[source + w * factor];
       }
     }
+    return sampled;
+  }
 
-    return pixelListToString;
+  @Override
+  public ProjectSnapshot snapshot() {
+    this.projectLock.writeLock().lock();
+    try {
+      return snapshotLocked();
+    } finally {
+      this.projectLock.writeLock().unlock();
+    }
   }
 
   /**
-   * Creates a string of the pixel components formatted to be outputted in a PPM format.
-   * @param pixelList - array list of pixels representing a layers pixel content.
-   * @return - a string which is correctly formatted to be displayed in a PPM file.
+   * Takes a snapshot of the project. The layers it holds are counted as shared until it is
+   * closed. The write lock on the project must be held.
+   * @return the snapshot.
    */
-  private String getPixelContentPPM(ArrayList<ArrayList<IPixels>> pixelList) {
-    String pixelListToString = "";
-    for (int h = 0; h < this.height; h++) {
-      for (int w = 0; w < this.width; w++) {
-        pixelListToString += pixelList.get(h).get(w).pixelToStringPPM();
+  private ProjectSnapshot snapshotLocked() {
+    List<ILayer> shared = new ArrayList<ILayer>(this.layers.values());
+    for (ILayer layer : shared) {
+      this.sharedLayers.merge(layer, 1, Integer::sum);
+    }
+    return new ProjectSnapshot(this.projectLoaded, this.width, this.height, this.maxValue,
+            this.premultiplied, this.fileExtension, this.layers, () -> release(shared));
+  }
+
+  /**
+   * Counts layers as no longer held by a closed snapshot.
+   * @param shared - layers the snapshot held.
+   */
+  private void release(List<ILayer> shared) {
+    this.projectLock.writeLock().lock();
+    try {
+      for (ILayer layer : shared) {
+        this.sharedLayers.computeIfPresent(layer, (held, count) -> count == 1 ? null : count - 1);
       }
-      pixelListToString += " \n";
+    } finally {
+      this.projectLock.writeLock().unlock();
     }
+  }
 
-    return pixelListToString;
+  /**
+   * Returns a layer whose pixels can be changed in place. A layer held by an open snapshot is
+   * first replaced by a copy, so the snapshot keeps the pixels it was taken with. The write lock
+   * on the project must be held.
+   * @param layerName - name of the layer to be changed.
+   * @return the layer of the project under that name.
+   */
+  private ILayer writableLayer(String layerName) {
+    ILayer layer = this.layers.get(layerName);
+    if (this.sharedLayers.containsKey(layer)) {
+      layer = new RasterLayer(layer.getFilterOption(), layer.getHeight(), layer.getWidth(),
+              layer.getRaster().clone());
+      this.layers.put(layerName, layer);
+    }
+    return layer;
   }
 
   /**
-   * Converts a layers content from (r, g, b, a) to (r, g, b).
-   * @param imageData - array list of pixels representing a layers pixel content.
-   * @return an arraylist of the image's content after it has been converted appropriately.
-   *
+   * Returns the arithmetic currently used to composite layers.
+   * @return the premultiplied compositor in premultiplied mode, otherwise the chosen compositor.
    */
-  private ArrayList writeToImage(ArrayList<ArrayList<IPixels>> imageData) {
+  private AlphaCompositor rowCompositor() {
+    return this.premultiplied ? PREMULTIPLIED_COMPOSITOR : this.compositor;
+  }
 
-    for (int h = 0; h < this.height; h++) {
-      for (int w = 0; w < this.width; w++) {
-        int redComponent = imageData.get(h).get(w).getRedComponent();
-        int greenComponent = imageData.get(h).get(w).getGreenComponent();
-        int blueComponent = imageData.get(h).get(w).getBlueComponent();
-        int alphaComponent = imageData.get(h).get(w).getAlphaComponent();
+  /**
+   * Changes the arithmetic used to composite layers over each other. The default is the
+   * {@link FixedPointAlphaCompositor}; the {@link DoubleAlphaCompositor} reproduces the double
+   * precision results of earlier versions. Layers are composited again on the next render.
+   * @param compositor - arithmetic used to composite layers.
+   * @throws IllegalArgumentException - if the compositor is null.
+   */
+  public void setAlphaCompositor(AlphaCompositor compositor) throws IllegalArgumentException {
+    if (compositor == null) {
+      throw new IllegalArgumentException("Compositor cannot be null.");
+    }
+    synchronized (this.renderLock) {
+      this.projectLock.writeLock().lock();
+      try {
+        this.compositor = compositor;
+        clearComposites();
+      } finally {
+        this.projectLock.writeLock().unlock();
+      }
+    }
+  }
 
-        int newRedComponent = redComponent * alphaComponent / this.maxValue;
-        int newGreenComponent = greenComponent * alphaComponent / this.maxValue;
-        int newBlueComponent = blueComponent * alphaComponent / this.maxValue;
+  /**
+   * Changes the arithmetic used to apply filters. The default is {@link FilterKernel#fastest()}.
+   * Layers are filtered again on the next render.
+   * @param filterKernel - arithmetic used to apply filters.
+   * @throws IllegalArgumentException - if the kernel is null.
+   */
+  public void setFilterKernel(FilterKernel filterKernel) throws IllegalArgumentException {
+    if (filterKernel == null) {
+      throw new IllegalArgumentException("Filter kernel cannot be null.");
+    }
+    synchronized (this.renderLock) {
+      this.projectLock.writeLock().lock();
+      try {
+        this.filterKernel = filterKernel;
+        clearComposites();
+      } finally {
+        this.projectLock.writeLock().unlock();
+      }
+    }
+  }
 
-        imageData.get(h).get(w).changeRedComponent(newRedComponent);
-        imageData.get(h).get(w).changeGreenComponent(newGreenComponent);
-        imageData.get(h).get(w).changeBlueComponent(newBlueComponent);
+  /**
+   * Changes how layers store their pixels. In premultiplied mode every layer keeps its color
+   * components already multiplied by alpha, which makes compositing a single multiply-add per
+   * component and flattening the rendered image a copy, at the cost of color precision in nearly
+   * transparent pixels. Images and loaded projects are converted as they enter the model, and
+   * saved projects are converted back to straight colors.
+   * @param premultiplied - true to store layers premultiplied, false for straight colors.
+   */
+  public void setPremultipliedAlpha(boolean premultiplied) {
+    synchronized (this.renderLock) {
+      this.projectLock.writeLock().lock();
+      try {
+        if (this.premultiplied == premultiplied) {
+          return;
+        }
+        for (String layerName : this.layers.keySet()) {
+          convertAlpha(writableLayer(layerName).getRaster(), premultiplied);
+        }
+        this.premultiplied = premultiplied;
+        clearComposites();
+      } finally {
+        this.projectLock.writeLock().unlock();
       }
     }
+  }
 
-    return imageData;
+  /**
+   * Converts packed pixels between straight and premultiplied color components.
+   * @param raster - packed pixels to be converted in place.
+   * @param premultiply - true to premultiply, false to convert back to straight colors.
+   */
+  private static void convertAlpha(int[] raster, boolean premultiply) {
+    convertAlpha(raster, raster, 0, raster.length, premultiply);
   }
 
+  /**
+   * Converts a run of pixels between straight and premultiplied color components.
+   * @param raster - packed pixels to be converted.
+   * @param dest - packed pixels the converted pixels are written to. May be the raster.
+   * @param offset - index of the first pixel to be converted.
+   * @param length - number of pixels to be converted.
+   * @param premultiply - true to premultiply, false to convert back to straight colors.
+   */
+  private static void convertAlpha(int[] raster, int[] dest, int offset, int length,
+                                   boolean premultiply) {
+    for (int i = offset; i < offset + length; i++) {
+      dest[i] = premultiply ? RasterLayer.premultiply(raster[i])
+              : RasterLayer.unpremultiply(raster[i]);
+    }
+  }
 
   /**
-   * Computes a new layer after applying transparency to the current layer using the background
-   * layer.
-   * @param currentLayer - arraylist storing the pixel content of the current layer's pixels.
-   * @param backgroundLayer - arraylist storing the pixel content of the background layer's pixels.
-   * @param xPos - places the current layer top-left corner at the x position.
-   * @param yPos - places the current layer top-left corner at the y position.
-   * @return - an ArrayList of the new layer after applying transparency to the current layer using
-   *         the background layer.
+   * Applies an operation to a region of the canvas. Regions taller than a band are split into
+   * bands of rows which are processed in parallel when rendering uses more than one thread, and
+   * one after another otherwise, so a render can be cancelled between any two bands.
+   * @param region - region of the canvas to be processed.
+   * @param operation - operation applied to each band, must only touch pixels inside its band.
    */
-  private ArrayList computeTransparency(ArrayList<ArrayList<IPixels>> currentLayer,
-                                     ArrayList<ArrayList<IPixels>> backgroundLayer, int xPos,
-                                     int yPos) {
-
-    ArrayList pixels = new ArrayList();
-    for (int h = 0; h < this.height; h++) {
-      ArrayList pixelList = new ArrayList();
-      for (int w = 0; w < this.width; w++) {
-        if (this.width >= xPos && this.height > yPos) {
-          double currentComponentR = currentLayer.get(h).get(w).getRedComponent();
-          double currentComponentG = currentLayer.get(h).get(w).getGreenComponent();
-          double currentComponentB = currentLayer.get(h).get(w).getBlueComponent();
-          double currentComponentA = currentLayer.get(h).get(w).getAlphaComponent();
-
-          double backgroundComponentR = backgroundLayer.get(h).get(w).getRedComponent();
-          double backgroundComponentG = backgroundLayer.get(h).get(w).getGreenComponent();
-          double backgroundComponentB = backgroundLayer.get(h).get(w).getBlueComponent();
-          double backgroundComponentA = backgroundLayer.get(h).get(w).getAlphaComponent();
-
-          double alphaComponentHelper = (currentComponentA / 255 + backgroundComponentA / 255 *
-                  (1 - (currentComponentA / 255)));
-          int newComponentA = (int) (alphaComponentHelper * 255);
-          int newComponentR = (int) ((currentComponentA / 255 * currentComponentR +
-                  backgroundComponentR * (backgroundComponentA / 255) * (1 - currentComponentA
-                          / 255))
-                  * (1 / alphaComponentHelper));
-          int newComponentG = (int) ((currentComponentA / 255 * currentComponentG +
-                  backgroundComponentG * (backgroundComponentA / 255) * (1 - currentComponentA /
-                          255)) * (1 / alphaComponentHelper));
-          int newComponentB = (int) ((currentComponentA / 255 * currentComponentB +
-                  backgroundComponentB * (backgroundComponentA / 255) * (1 - currentComponentA
-                          / 255)) * (1 / alphaComponentHelper));
-
-          pixelList.add(new Pixels(new Coord(h, w), newComponentR, newComponentG, newComponentB,
-                  newComponentA));
-        } else {
-          int backgroundComponentR = backgroundLayer.get(h).get(w).getRedComponent();
-          int backgroundComponentG = backgroundLayer.get(h).get(w).getGreenComponent();
-          int backgroundComponentB = backgroundLayer.get(h).get(w).getBlueComponent();
-          int backgroundComponentA = backgroundLayer.get(h).get(w).getAlphaComponent();
-
-          pixelList.add(new Pixels(new Coord(h, w), backgroundComponentR, backgroundComponentG,
-                  backgroundComponentB, backgroundComponentA));
-        }
+  private void forEachBand(Rectangle region, Consumer<Rectangle> operation) {
+    if (region.isEmpty()) {
+      return;
+    }
+    if (this.parallelism == 1 || region.height <= this.bandHeight) {
+      int bottom = region.y + region.height;
+      for (int y = region.y; y < bottom; y += this.bandHeight) {
+        operation.accept(new Rectangle(region.x, y, region.width,
+                Math.min(this.bandHeight, bottom - y)));
       }
-      pixels.add(pixelList);
+      return;
     }
+    this.renderPool.invoke(new RowBandTask(region, this.bandHeight, operation));
+  }
 
-    return pixels;
+  /**
+   * Records that part of a layer has changed since the last render.
+   * @param layerName - layer whose content or filter has changed.
+   * @param region - part of the canvas that has changed.
+   */
+  private void markDirty(String layerName, Rectangle region) {
+    this.dirtyRegions.put(layerName, union(this.dirtyRegions.get(layerName), region));
   }
 
   /**
-   * Applies changes to pixel components based upon the specified filter option and operation.
-   * @param redComponent - red component of the pixel.
-   * @param greenComponent - green component of the pixel.
-   * @param blueComponent - blue component of the pixel.
-   * @param maxComponent - value to be added or subtracted to each component r, g, b components.
-   *                     This value is computed based upon the type of filter operation being used.
-   * @param operation - used specified filter operation. Will contain either, "brighten" or
-   *                  "darken" based upon user preferences.
-   * @return a list of integers containing the revised r, g, b component.
+   * Discards every cached composite and the rendered image. The render lock and the write lock on
+   * the project must be held.
    */
-  private int[] changeComponent(int redComponent, int greenComponent, int blueComponent,
-                                    int maxComponent, String operation) {
-    if (operation.equals("brighten")) {
-      if (redComponent + maxComponent > this.maxValue) {
-        redComponent = this.maxValue;
-      } else {
-        redComponent += maxComponent;
-      }
+  private void clearComposites() {
+    this.composites.clear();
+    this.dirtyRegions.clear();
+    this.renderedImage = null;
+  }
 
-      if (greenComponent + maxComponent > this.maxValue) {
-        greenComponent = this.maxValue;
-      } else {
-        greenComponent += maxComponent;
-      }
+  /**
+   * Returns the name of the top most layer of a project.
+   * @param project - snapshot of the project.
+   * @return the name of the last layer added to the project.
+   */
+  private static String topLayer(ProjectSnapshot project) {
+    String top = null;
+    for (String layers : project.layers().keySet()) {
+      top = layers;
+    }
+    return top;
+  }
 
-      if (blueComponent + maxComponent > this.maxValue) {
-        blueComponent = this.maxValue;
-      } else {
-        blueComponent += maxComponent;
-      }
+  /**
+   * Computes the smallest rectangle containing both regions. Unlike {@link Rectangle#union}, an
+   * empty or missing region contributes nothing.
+   * @param first - first region, may be null.
+   * @param second - second region, may be null.
+   * @return the union of both regions.
+   */
+  private static Rectangle union(Rectangle first, Rectangle second) {
+    if (first == null || first.isEmpty()) {
+      return second == null ? new Rectangle() : new Rectangle(second);
+    }
+    if (second == null || second.isEmpty()) {
+      return new Rectangle(first);
     }
+    return first.union(second);
+  }
 
-    if (operation.equals("darken")) {
-      if (redComponent - maxComponent < 0) {
-        redComponent = 0;
-      } else {
-        redComponent -= maxComponent;
-      }
+  @Override
+  public List<String> getLayerNames() {
+    this.projectLock.readLock().lock();
+    try {
+      return new ArrayList<String>(this.layers.keySet());
+    } finally {
+      this.projectLock.readLock().unlock();
+    }
+  }
 
-      if (greenComponent - maxComponent < 0) {
-        greenComponent = 0;
-      } else {
-        greenComponent -= maxComponent;
-      }
+  @Override
+  public int getHeight() {
+    this.projectLock.readLock().lock();
+    try {
+      return this.height;
+    } finally {
+      this.projectLock.readLock().unlock();
+    }
+  }
 
-      if (blueComponent - maxComponent < 0) {
-        blueComponent = 0;
-      } else {
-        blueComponent -= maxComponent;
-      }
+  @Override
+  public int getWidth() {
+    this.projectLock.readLock().lock();
+    try {
+      return this.width;
+    } finally {
+      this.projectLock.readLock().unlock();
     }
+  }
 
-    int[] components = {redComponent, greenComponent, blueComponent};
-    return components;
+  @Override
+  public int maxValue() {
+    this.projectLock.readLock().lock();
+    try {
+      return this.maxValue;
+    } finally {
+      this.projectLock.readLock().unlock();
+    }
+  }
 
+  @Override
+  public String getFileExtension() {
+    this.projectLock.readLock().lock();
+    try {
+      return this.fileExtension;
+    } finally {
+      this.projectLock.readLock().unlock();
+    }
   }
 
+  /**
+   * Writes the pixel components formatted to be outputted in a collage project format. Layers
+   * stored premultiplied are written with straight colors.
+   * @param pixelList - packed pixels representing a layers pixel content.
+   * @param project - snapshot of the project the layer belongs to.
+   * @param projectContent - encoder the formatted components are written to.
+   * @throws IOException - if the components cannot be written.
+   */
+  private static void writePixelContent(int[] pixelList, ProjectSnapshot project,
+                                        TextEncoder projectContent) throws IOException {
+    for (int i = 0; i < project.getHeight() * project.getWidth(); i++) {
+      int argb = project.isPremultiplied() ? RasterLayer.unpremultiply(pixelList[i])
+              : pixelList[i];
+      projectContent.write(RasterLayer.red(argb)).write(' ').write(RasterLayer.green(argb))
+              .write(' ').write(RasterLayer.blue(argb)).write(' ').write(RasterLayer.alpha(argb))
+              .write('\n');
+    }
+  }
 
   /**
-   * Changes the pixel components by intensity. Computes the average of the r, g, b component's
-   * values and adds the average of the computed values to each component.
-   * @param pixelData - array list of the pixels containing the component data.
-   * @param operation - used specified filter operation. Will contain either, "brighten" or
-   *                  "darken" based upon user preferences.
-   * @return an arraylist of the components after the filter intensity has been applied.
+   * Converts a layers content from (r, g, b, a) to (r, g, b).
+   * @param imageData - packed pixels representing a layers pixel content.
+   * @param dest - packed pixels the converted content is written to.
+   * @param offset - index of the first pixel to be converted.
+   * @param length - number of pixels to be converted.
+   * @return the packed pixels of the image after it has been converted appropriately.
+   *
    */
-  private ArrayList changeComponentIntensity(ArrayList<ArrayList<IPixels>> pixelData,
-                                                                 String operation) {
-    for (int h = 0; h < this.height; h++) {
-      for (int w = 0; w < this.width; w++) {
-        int redComponent = pixelData.get(h).get(w).getRedComponent();
-        int greenComponent = pixelData.get(h).get(w).getGreenComponent();
-        int blueComponent = pixelData.get(h).get(w).getBlueComponent();
+  private int[] writeToImage(int[] imageData, int[] dest, int offset, int length) {
 
-        int maxComponent = (redComponent + greenComponent + blueComponent) / 3;
+    if (this.premultiplied) {
+      // premultiplied components already hold the color scaled by alpha
+      System.arraycopy(imageData, offset, dest, offset, length);
+      return dest;
+    }
 
-        int[] newValues = changeComponent(redComponent, greenComponent, blueComponent,
-                maxComponent, operation);
+    for (int i = offset; i < offset + length; i++) {
+      int argb = imageData[i];
+      int alphaComponent = RasterLayer.alpha(argb);
 
-        pixelData.get(h).get(w).changeRedComponent(newValues[0]);
-        pixelData.get(h).get(w).changeBlueComponent(newValues[1]);
-        pixelData.get(h).get(w).changeGreenComponent(newValues[2]);
-      }
+      int newRedComponent = RasterLayer.red(argb) * alphaComponent / this.maxValue;
+      int newGreenComponent = RasterLayer.green(argb) * alphaComponent / this.maxValue;
+      int newBlueComponent = RasterLayer.blue(argb) * alphaComponent / this.maxValue;
+
+      dest[i] = RasterLayer.pack(newRedComponent, newGreenComponent, newBlueComponent,
+              alphaComponent);
     }
 
+    return dest;
+  }
+
+
+  /**
+   * Computes a new layer after applying transparency to the current layer using the background
+   * layer.
+   * @param currentLayer - packed pixel content of the current layer.
+   * @param currentWidth - width of a row of the current layer.
+   * @param xPos - places the current layer top-left corner at the x position.
+   * @param yPos - places the current layer top-left corner at the y position.
+   * @param backgroundLayer - packed pixel content of the background layer.
+   * @param dest - packed pixels the new layer is written to. May be the background layer.
+   * @param region - part of the canvas to be computed. Must lie within the current layer.
+   * @return - packed pixels of the new layer after applying transparency to the current layer using
+   *         the background layer.
+   */
+  private int[] computeTransparency(int[] currentLayer, int currentWidth, int xPos, int yPos,
+                                    int[] backgroundLayer, int[] dest, Rectangle region) {
+
+    AlphaCompositor rowCompositor = rowCompositor();
+    for (int h = region.y; h < region.y + region.height; h++) {
+      rowCompositor.compositeRow(currentLayer, (h - yPos) * currentWidth + (region.x - xPos),
+              backgroundLayer, dest, h * this.width + region.x, region.width);
+    }
+
+    return dest;
+  }
+
+  /**
+   * Changes the pixel components by intensity. Computes the average of the r, g, b component's
+   * values and adds the average of the computed values to each component.
+   * @param pixelData - packed pixels containing the component data.
+   * @param operation - used specified filter operation. Will contain either, "brighten" or
+   *                  "darken" based upon user preferences.
+   * @param offset - index of the first pixel the filter is applied to.
+   * @param length - number of pixels the filter is applied to.
+   * @return the packed pixels after the filter intensity has been applied.
+   */
+  private int[] changeComponentIntensity(int[] pixelData, String operation, int offset,
+                                         int length) {
+    this.filterKernel.changeComponentIntensity(pixelData, offset, length,
+            operation.equals("brighten"), this.maxValue);
+
     return pixelData;
 
   }
@@ -463,30 +1080,17 @@ public class CollageModelImpl implements CollageModel {
   /**
    * Changes the pixel components by intensity. Computes the maximum of the r, g, b component's
    * values and adds the maximum of the computed values to each component.
-   * @param pixelData - array list of the pixels containing the component data.
+   * @param pixelData - packed pixels containing the component data.
    * @param operation - used specified filter operation. Will contain either, "brighten" or
    *                  "darken" based upon user preferences.
-   * @return an arraylist of the components after the filter component has been applied.
+   * @param offset - index of the first pixel the filter is applied to.
+   * @param length - number of pixels the filter is applied to.
+   * @return the packed pixels after the filter component has been applied.
    */
-  private ArrayList changeComponentValue(ArrayList<ArrayList<IPixels>> pixelData,
-                                         String operation) {
-    for (int h = 0; h < this.height; h++) {
-      for (int w = 0; w < this.width; w++) {
-        int redComponent = pixelData.get(h).get(w).getRedComponent();
-        int greenComponent = pixelData.get(h).get(w).getGreenComponent();
-        int blueComponent = pixelData.get(h).get(w).getBlueComponent();
-
-        int maxVal = Math.max(redComponent, greenComponent);
-        int maxComponent = Math.max(maxVal, blueComponent);
-
-        int[] newValues = changeComponent(redComponent, greenComponent, blueComponent,
-                maxComponent, operation);
-
-        pixelData.get(h).get(w).changeRedComponent(newValues[0]);
-        pixelData.get(h).get(w).changeBlueComponent(newValues[1]);
-        pixelData.get(h).get(w).changeGreenComponent(newValues[2]);
-      }
-    }
+  private int[] changeComponentValue(int[] pixelData, String operation, int offset,
+                                     int length) {
+    this.filterKernel.changeComponentValue(pixelData, offset, length,
+            operation.equals("brighten"), this.maxValue);
 
     return pixelData;
   }
@@ -494,29 +1098,17 @@ public class CollageModelImpl implements CollageModel {
   /**
    * Changes the pixel components by luma. Computes the luma value of the r, g, b component's
    * values and adds the luma value of the computed values to each component.
-   * @param pixelData - array list of the pixels containing the component data.
+   * @param pixelData - packed pixels containing the component data.
    * @param operation - used specified filter operation. Will contain either, "brighten" or
    *                  "darken" based upon user preferences.
-   * @return an arraylist of the components after the filter luma has been applied.
+   * @param offset - index of the first pixel the filter is applied to.
+   * @param length - number of pixels the filter is applied to.
+   * @return the packed pixels after the filter luma has been applied.
    */
-  private ArrayList changeComponentLuma(ArrayList<ArrayList<IPixels>> pixelData, String operation) {
-    for (int h = 0; h < this.height; h++) {
-      for (int w = 0; w < this.width; w++) {
-        int redComponent = pixelData.get(h).get(w).getRedComponent();
-        int greenComponent = pixelData.get(h).get(w).getGreenComponent();
-        int blueComponent = pixelData.get(h).get(w).getBlueComponent();
-
-        int maxComponent = (int) (0.2126 * redComponent + 0.7152 * greenComponent + 0.0722 *
-                blueComponent);
-
-        int[] newValues = changeComponent(redComponent, greenComponent, blueComponent,
-                maxComponent, operation);
-
-        pixelData.get(h).get(w).changeRedComponent(newValues[0]);
-        pixelData.get(h).get(w).changeBlueComponent(newValues[1]);
-        pixelData.get(h).get(w).changeGreenComponent(newValues[2]);
-      }
-    }
+  private int[] changeComponentLuma(int[] pixelData, String operation, int offset,
+                                    int length) {
+    this.filterKernel.changeComponentLuma(pixelData, offset, length,
+            operation.equals("brighten"), this.maxValue);
 
     return pixelData;
 
@@ -524,28 +1116,28 @@ public class CollageModelImpl implements CollageModel {
 
   /**
    * Chnages the pixel components to only contain the pixel component specified by the user.
-   * @param pixelData - array list of the pixels containing the component data.
+   * @param pixelData - packed pixels containing the component data.
    * @param color - r, g, b color that the user wants to keep. All other colors will be filtered
    *              out.
-   * @return an arraylist of the components after the filter has been applied.
-   */
-  private ArrayList filterComponent(ArrayList<ArrayList<IPixels>> pixelData, String color) {
-
-    for (int h = 0; h < this.height; h++) {
-      for (int w = 0; w < this.width; w++) {
-        if (color.equals("red")) {
-          pixelData.get(h).get(w).changeGreenComponent(0);
-          pixelData.get(h).get(w).changeBlueComponent(0);
-        } else if (color.equals("blue")) {
-          pixelData.get(h).get(w).changeRedComponent(0);
-          pixelData.get(h).get(w).changeGreenComponent(0);
-        } else if (color.equals("green")) {
-          pixelData.get(h).get(w).changeRedComponent(0);
-          pixelData.get(h).get(w).changeBlueComponent(0);
-        }
-      }
+   * @param offset - index of the first pixel the filter is applied to.
+   * @param length - number of pixels the filter is applied to.
+   * @return the packed pixels after the filter has been applied.
+   */
+  private int[] filterComponent(int[] pixelData, String color, int offset, int length) {
+
+    int mask;
+    if (color.equals("red")) {
+      mask = 0xFFFF0000;
+    } else if (color.equals("blue")) {
+      mask = 0xFF0000FF;
+    } else if (color.equals("green")) {
+      mask = 0xFF00FF00;
+    } else {
+      return pixelData;
     }
 
+    this.filterKernel.filterComponent(pixelData, offset, length, mask);
+
     return pixelData;
   }
 
@@ -553,34 +1145,17 @@ public class CollageModelImpl implements CollageModel {
    * Filters the components based upon the currentLayer and backgroundLayer. Find the absolute
    * value of the difference between the current layer and background layer and computes
    * the filtered value.
-   * @param currentLayer - ArrayList of pixels of the current layer.
-   * @param backgroundLayer - ArrayList of pixels of the background layer. The layer below the
+   * @param currentLayer - packed pixels of the current layer.
+   * @param backgroundLayer - packed pixels of the background layer. The layer below the
    *                        current layer.
-   * @return an arraylist of the components after the blending filter has been applied.
+   * @param offset - index of the first pixel the filter is applied to.
+   * @param length - number of pixels the filter is applied to.
+   * @return the packed pixels after the blending filter has been applied.
    */
-  private ArrayList blendingFilterOption(ArrayList<ArrayList<IPixels>> currentLayer,
-                                        ArrayList<ArrayList<IPixels>> backgroundLayer) {
-
-    for (int h = 0; h < this.height; h++) {
-      for (int w = 0; w < this.width; w++) {
-        int currentComponentR = currentLayer.get(h).get(w).getRedComponent();
-        int currentComponentG = currentLayer.get(h).get(w).getGreenComponent();
-        int currentComponentB = currentLayer.get(h).get(w).getBlueComponent();
-
-        int backgroundComponentR = backgroundLayer.get(h).get(w).getRedComponent();
-        int backgroundComponentG = backgroundLayer.get(h).get(w).getGreenComponent();
-        int backgroundComponentB = backgroundLayer.get(h).get(w).getBlueComponent();
-
-        int newComponentR = Math.abs(currentComponentR - backgroundComponentR);
-        int newComponentG = Math.abs(currentComponentG - backgroundComponentG);
-        int newComponentB = Math.abs(currentComponentB - backgroundComponentB);
+  private int[] blendingFilterOption(int[] currentLayer, int[] backgroundLayer, int offset,
+                                     int length) {
 
-        currentLayer.get(h).get(w).changeRedComponent(newComponentR);
-        currentLayer.get(h).get(w).changeRedComponent(newComponentG);
-        currentLayer.get(h).get(w).changeRedComponent(newComponentB);
-
-      }
-    }
+    this.filterKernel.blendDifference(currentLayer, backgroundLayer, offset, length);
 
     return currentLayer;
   }
@@ -590,147 +1165,24 @@ public class CollageModelImpl implements CollageModel {
    * value to HSL representation and computes a new layer after the specified blending has been
    * applied. HSL representation is then converted back to r, g, b value so that it passed back
    * into the project.
-   * @param currentLayer - ArrayList of pixels of the current layer.
-   * @param backgroundLayer - ArrayList of pixels of the background layer. The layer below the
+   * @param currentLayer - packed pixels of the current layer.
+   * @param backgroundLayer - packed pixels of the background layer. The layer below the
    *                        current layer.
    * @param operation - user specified operation. Should be one of "multiply" or "screen".
-   * @return an arraylist of the components after the blending filter has been applied.
-   */
-  private ArrayList blendingOption(ArrayList<ArrayList<IPixels>> currentLayer,
-                                           ArrayList<ArrayList<IPixels>> backgroundLayer,
-                                           String operation) {
-    for (int h = 0; h < this.height; h++) {
-      for (int w = 0; w < this.width; w++) {
-        double currentComponentR = currentLayer.get(h).get(w).getRedComponent();
-        double currentComponentG = currentLayer.get(h).get(w).getGreenComponent();
-        double currentComponentB = currentLayer.get(h).get(w).getBlueComponent();
-
-        double backgroundComponentR = backgroundLayer.get(h).get(w).getRedComponent();
-        double backgroundComponentG = backgroundLayer.get(h).get(w).getGreenComponent();
-        double backgroundComponentB = backgroundLayer.get(h).get(w).getBlueComponent();
-
-        Pixels currentHSLRep = convertRGBToHSL(currentComponentR / 255,
-                currentComponentG / 255, currentComponentB / 255);
-        Pixels backgroundHSLRep = convertRGBToHSL(backgroundComponentR / 255,
-                backgroundComponentG / 225, backgroundComponentB / 255);
-
-        double[] newRGBComponent;
-
-        if (operation.equals("multiply")) {
-          newRGBComponent = convertHSLtoRGB(currentHSLRep.getHueComponent(),
-                  currentHSLRep.getSaturationComponent(),
-                  currentHSLRep.getLightnessComponent() *
-                          backgroundHSLRep.getLightnessComponent());
-        } else if (operation.equals("screen")) {
-          newRGBComponent = convertHSLtoRGB(currentHSLRep.getHueComponent(),
-                  currentHSLRep.getSaturationComponent(),
-                  (1 - ((1 - currentHSLRep.getLightnessComponent()) *
-                          (1 - backgroundHSLRep.getLightnessComponent()))));
-        } else {
-          throw new IllegalArgumentException("Invalid operation argument");
-        }
-
-        int newComponentR = checkComponentOutOfBound((int)newRGBComponent[0]);
-        int newComponentG = checkComponentOutOfBound((int)newRGBComponent[1]);
-        int newComponentB = checkComponentOutOfBound((int)newRGBComponent[2]);
-
-        currentLayer.get(h).get(w).changeRedComponent(newComponentR);
-        currentLayer.get(h).get(w).changeRedComponent(newComponentG);
-        currentLayer.get(h).get(w).changeRedComponent(newComponentB);
-
-      }
-    }
-
-    return currentLayer;
-  }
-
-  /**
-   * Restricts the component value, so it is not greater than the max value or less than the minimum
-   * value.
-   * @param component - value of the component.
-   * @return integer value of the component. Applies restrictions if necessary.
+   * @param offset - index of the first pixel the filter is applied to.
+   * @param length - number of pixels the filter is applied to.
+   * @return the packed pixels after the blending filter has been applied.
    */
-  private int checkComponentOutOfBound(int component) {
-    if (component > this.maxValue) {
-      return this.maxValue;
-    } else if (component < 0) {
-      return 0;
-    } else {
-      return component;
-    }
-  }
-
-  /**
-   * Converts from RGB representation to HSL representation.
-   * @param r - red component value.
-   * @param g - green component value.
-   * @param b - green component value.
-   * @return A pixel after it has been converted to HSL value.
-   */
-  private Pixels convertRGBToHSL(double r, double g, double b) {
-    double componentMax = Math.max(r, Math.max(g, b));
-    double componentMin = Math.min(r, Math.min(g, b));
-    double delta = componentMax - componentMin;
-
-    double lightness = (componentMax + componentMin) / 2;
-    double hue;
-    double saturation;
-    if (delta == 0) {
-      hue = 0;
-      saturation = 0;
-    } else {
-      saturation = delta / (1 - Math.abs(2 * lightness - 1));
-      hue = 0;
-      if (componentMax == r) {
-        hue = (g - b) / delta;
-        while (hue < 0) {
-          hue += 6; //hue must be positive to find the appropriate modulus
-        }
-        hue = hue % 6;
-      } else if (componentMax == g) {
-        hue = (b - r) / delta;
-        hue += 2;
-      } else if (componentMax == b) {
-        hue = (r - g) / delta;
-        hue += 4;
-      }
-
-      hue = hue * 60;
+  private int[] blendingOption(int[] currentLayer, int[] backgroundLayer, String operation,
+                               int offset, int length) {
+    if (!operation.equals("multiply") && !operation.equals("screen")) {
+      throw new IllegalArgumentException("Invalid operation argument");
     }
 
-    return new Pixels(hue, saturation, lightness);
-
-  }
-
-  /**
-   * Converts from HSL representation to RGB representation.
-   * @param hue - hue component of the HSL representation.
-   * @param saturation - saturation component of the HSL representation.
-   * @param lightness - lightness component of the HSL representation.
-   * @return a list of double containing the converted RGB values.
-   */
-  private double[] convertHSLtoRGB(double hue, double saturation, double lightness) {
-    double r = convertFn(hue, saturation, lightness, 0) * 255;
-    double g = convertFn(hue, saturation, lightness, 8) * 255;
-    double b = convertFn(hue, saturation, lightness, 4) * 255;
+    this.filterKernel.blendLightness(currentLayer, backgroundLayer, offset, length,
+            operation.equals("screen"), this.maxValue);
 
-    double[] pixels = {r, g, b};
-
-    return pixels;
-  }
-
-  /**
-   * Computes the RGB components given the HSL representation.
-   * @param hue - hue component of the HSL representation.
-   * @param saturation - saturation component of the HSL representation.
-   * @param lightness - lightness component of the HSL representation.
-   * @param n - factor used to compute the respective HSL value.
-   * @return - a double value containing the computed HSL value.
-   */
-  private double convertFn(double hue, double saturation, double lightness, int n) {
-    double k = (n + (hue / 30)) % 12;
-    double a  = saturation * Math.min(lightness, 1 - lightness);
-    return lightness - a * Math.max(-1, Math.min(k - 3, Math.min(9 - k, 1)));
+    return currentLayer;
   }
 
   /**
@@ -746,4 +1198,32 @@ public class CollageModelImpl implements CollageModel {
     }
     throw new IllegalArgumentException("Filter does not exist");
   }
+
+  /**
+   * Represents the part of a layer's composite that has to be computed during a render.
+   */
+  private static class RenderStage {
+    private final int[] layer;
+    private final int[] background;
+    private final int[] composite;
+    private final String filterOption;
+    private final Rectangle region;
+
+    /**
+     * Initializes the stage.
+     * @param layer - packed pixels of the layer.
+     * @param background - packed pixels of the composite beneath the layer.
+     * @param composite - packed pixels the layer's composite is written to.
+     * @param filterOption - filter applied to the composite.
+     * @param region - part of the canvas whose composite has to be computed.
+     */
+    RenderStage(int[] layer, int[] background, int[] composite, String filterOption,
+                Rectangle region) {
+      this.layer = layer;
+      this.background = background;
+      this.composite = composite;
+      this.filterOption = filterOption;
+      this.region = region;
+    }
+  }
 }
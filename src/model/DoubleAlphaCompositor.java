@@ -0,0 +1,43 @@
+package model;
+
+/**
+ * Composites pixels using double precision arithmetic on components scaled to the range 0 to 1,
+ * truncating each result back to an integer component.
+ */
+public class DoubleAlphaCompositor implements AlphaCompositor {
+
+  @Override
+  public void compositeRow(int[] current, int currentOffset, int[] background, int[] dest,
+                           int offset, int length) {
+    for (int i = 0; i < length; i++) {
+      int currentPixel = current[currentOffset + i];
+      int backgroundPixel = background[offset + i];
+      double currentComponentR = RasterLayer.red(currentPixel);
+      double currentComponentG = RasterLayer.green(currentPixel);
+      double currentComponentB = RasterLayer.blue(currentPixel);
+      double currentComponentA = RasterLayer.alpha(currentPixel);
+
+      double backgroundComponentR = RasterLayer.red(backgroundPixel);
+      double backgroundComponentG = RasterLayer.green(backgroundPixel);
+      double backgroundComponentB = RasterLayer.blue(backgroundPixel);
+      double backgroundComponentA = RasterLayer.alpha(backgroundPixel);
+
+      double alphaComponentHelper = (currentComponentA / 255 + backgroundComponentA / 255 *
+              (1 - (currentComponentA / 255)));
+      int newComponentA = (int) (alphaComponentHelper * 255);
+      int newComponentR = (int) ((currentComponentA / 255 * currentComponentR +
+              backgroundComponentR * (backgroundComponentA / 255) * (1 - currentComponentA
+                      / 255))
+              * (1 / alphaComponentHelper));
+      int newComponentG = (int) ((currentComponentA / 255 * currentComponentG +
+              backgroundComponentG * (backgroundComponentA / 255) * (1 - currentComponentA /
+                      255)) * (1 / alphaComponentHelper));
+      int newComponentB = (int) ((currentComponentA / 255 * currentComponentB +
+              backgroundComponentB * (backgroundComponentA / 255) * (1 - currentComponentA
+                      / 255)) * (1 / alphaComponentHelper));
+
+      dest[offset + i] = RasterLayer.pack(newComponentR, newComponentG, newComponentB,
+              newComponentA);
+    }
+  }
+}
@@ -0,0 +1,89 @@
+package model;
+
+/**
+ * This interface represents the per-pixel arithmetic of the layer filters. Every operation works on
+ * a run of packed ARGB pixels and changes them in place, so the model only has to walk the rows of
+ * the region being filtered. The alpha component of a pixel is never changed.
+ */
+public interface FilterKernel {
+
+  /**
+   * Returns the fastest kernel available to the running virtual machine. The vector kernel,
+   * model.VectorFilterKernel, is used when it has been compiled from the src-vector sources, the
+   * jdk.incubator.vector module has been added to the module graph and the processor has vector
+   * registers wide enough to be worth using, otherwise the {@link ScalarFilterKernel} is used.
+   * Both produce identical pixels. The vector kernel is only looked up by name, so the rest of
+   * the program compiles without it.
+   * @return the fastest available kernel.
+   */
+  static FilterKernel fastest() {
+    try {
+      return (FilterKernel) Class.forName("model.VectorFilterKernel").getDeclaredConstructor()
+              .newInstance();
+    } catch (ReflectiveOperationException | LinkageError | UnsupportedOperationException e) {
+      return new ScalarFilterKernel();
+    }
+  }
+
+  /**
+   * Keeps only the components selected by the mask.
+   * @param pixels - packed pixels to be filtered.
+   * @param offset - index of the first pixel of the run.
+   * @param length - number of pixels in the run.
+   * @param mask - bits of each pixel to keep. Should include the alpha component.
+   */
+  void filterComponent(int[] pixels, int offset, int length, int mask);
+
+  /**
+   * Brightens or darkens each component by the largest of the pixel's r, g, b components.
+   * @param pixels - packed pixels to be filtered.
+   * @param offset - index of the first pixel of the run.
+   * @param length - number of pixels in the run.
+   * @param brighten - true to brighten, false to darken.
+   * @param maxValue - largest value a component can be brightened to.
+   */
+  void changeComponentValue(int[] pixels, int offset, int length, boolean brighten,
+                            int maxValue);
+
+  /**
+   * Brightens or darkens each component by the average of the pixel's r, g, b components.
+   * @param pixels - packed pixels to be filtered.
+   * @param offset - index of the first pixel of the run.
+   * @param length - number of pixels in the run.
+   * @param brighten - true to brighten, false to darken.
+   * @param maxValue - largest value a component can be brightened to.
+   */
+  void changeComponentIntensity(int[] pixels, int offset, int length, boolean brighten,
+                                int maxValue);
+
+  /**
+   * Brightens or darkens each component by the luma of the pixel's r, g, b components.
+   * @param pixels - packed pixels to be filtered.
+   * @param offset - index of the first pixel of the run.
+   * @param length - number of pixels in the run.
+   * @param brighten - true to brighten, false to darken.
+   * @param maxValue - largest value a component can be brightened to.
+   */
+  void changeComponentLuma(int[] pixels, int offset, int length, boolean brighten, int maxValue);
+
+  /**
+   * Blends the pixels with the background by the difference of their components.
+   * @param current - packed pixels to be filtered.
+   * @param background - packed pixels of the layer underneath.
+   * @param offset - index in both arrays of the first pixel of the run.
+   * @param length - number of pixels in the run.
+   */
+  void blendDifference(int[] current, int[] background, int offset, int length);
+
+  /**
+   * Blends the pixels with the background by combining their HSL lightness.
+   * @param current - packed pixels to be filtered.
+   * @param background - packed pixels of the layer underneath.
+   * @param offset - index in both arrays of the first pixel of the run.
+   * @param length - number of pixels in the run.
+   * @param screen - true to screen the lightness, false to multiply it.
+   * @param maxValue - largest value of a component.
+   */
+  void blendLightness(int[] current, int[] background, int offset, int length, boolean screen,
+                      int maxValue);
+}
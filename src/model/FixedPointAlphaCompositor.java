@@ -0,0 +1,56 @@
+package model;
+
+/**
+ * Composites pixels using integer arithmetic only. Each component of the result is the exact
+ * rational result of compositing, rounded down, so it never differs from the
+ * {@link DoubleAlphaCompositor} by more than 1. The double path can land 1 below the exact value
+ * where rounding error pushes a whole result just under an integer. Fully opaque pixels replace the
+ * background as they are and fully transparent pixels leave it untouched. Both cases match the
+ * double path exactly when the background is opaque.
+ */
+public class FixedPointAlphaCompositor implements AlphaCompositor {
+
+  // reciprocals are scaled by 2^42, enough for the division below to be exact for every numerator
+  // up to 2 * 255^3 and every denominator up to 255^2
+  private static final int SHIFT = 42;
+
+  @Override
+  public void compositeRow(int[] current, int currentOffset, int[] background, int[] dest,
+                           int offset, int length) {
+    for (int i = 0; i < length; i++) {
+      int currentPixel = current[currentOffset + i];
+      int currentAlpha = currentPixel >>> 24;
+
+      if (currentAlpha == 255) {
+        dest[offset + i] = currentPixel;
+        continue;
+      }
+
+      int backgroundPixel = background[offset + i];
+      int backgroundAlpha = backgroundPixel >>> 24;
+
+      if (currentAlpha == 0) {
+        dest[offset + i] = backgroundAlpha == 0 ? 0 : backgroundPixel;
+        continue;
+      }
+
+      // both weights are scaled by 255, their sum is 255 times the alpha of the result
+      int currentWeight = 255 * currentAlpha;
+      int backgroundWeight = backgroundAlpha * (255 - currentAlpha);
+      int totalWeight = currentWeight + backgroundWeight;
+      long reciprocal = ((1L << SHIFT) + totalWeight - 1) / totalWeight;
+
+      int newComponentR = (int) (((long) currentWeight * RasterLayer.red(currentPixel)
+              + (long) backgroundWeight * RasterLayer.red(backgroundPixel)) * reciprocal >>> SHIFT);
+      int newComponentG = (int) (((long) currentWeight * RasterLayer.green(currentPixel)
+              + (long) backgroundWeight * RasterLayer.green(backgroundPixel)) * reciprocal
+              >>> SHIFT);
+      int newComponentB = (int) (((long) currentWeight * RasterLayer.blue(currentPixel)
+              + (long) backgroundWeight * RasterLayer.blue(backgroundPixel)) * reciprocal
+              >>> SHIFT);
+
+      dest[offset + i] = (totalWeight / 255) << 24 | newComponentR << 16 | newComponentG << 8
+              | newComponentB;
+    }
+  }
+}
@@ -1,6 +1,7 @@
 package model;
 
 import java.util.ArrayList;
+import java.util.List;
 
 /**
  * This interface represents the different operations that can be applied to a layer.
@@ -23,7 +24,24 @@ public interface ILayer {
    */
   ILayer changePixels(ArrayList pixels);
 
-  Layer addNewLayer(Filter filter, int height, int width, int maxValue, int value);
+  /**
+   * Changes the pixel content of the layer to the given packed ARGB pixels.
+   * @param raster - packed pixel content, one int per pixel in row-major order.
+   * @return the layer after its pixel content has been changed.
+   * @throws IllegalArgumentException - if the raster does not match the layer dimensions.
+   */
+  ILayer changeRaster(int[] raster) throws IllegalArgumentException;
+
+  /**
+   * Fills the layer with pixels of the given value.
+   * @param filter - filter option of the layer.
+   * @param height - height of the layer.
+   * @param width - width of the layer.
+   * @param maxValue - value of the r, g, b components of each pixel.
+   * @param value - value of the alpha component of each pixel.
+   * @return the layer after it has been filled.
+   */
+  ILayer addNewLayer(Filter filter, int height, int width, int maxValue, int value);
 
   /**
    * Returns the filter option of a layer.
@@ -33,8 +51,43 @@ public interface ILayer {
 
   /**
    * Return the pixel content of the layer.
-   * @return Arraylist of pixels corresponding to a layer.
+   * @return list of rows of pixels corresponding to a layer.
+   */
+  List getPixels();
+
+  /**
+   * Returns the height of the layer.
+   * @return the number of rows of pixels in the layer.
+   */
+  int getHeight();
+
+  /**
+   * Returns the width of the layer.
+   * @return the number of pixels in each row of the layer.
+   */
+  int getWidth();
+
+  /**
+   * Returns the pixel content of the layer as packed ARGB pixels, one int per pixel in row-major
+   * order.
+   * @return the packed pixel content of the layer.
+   */
+  int[] getRaster();
+
+  /**
+   * Copies a row of packed ARGB pixels out of the layer.
+   * @param row - row to be copied.
+   * @param dest - array the row is copied into.
+   * @param offset - position in dest of the first pixel of the row.
+   */
+  void getRow(int row, int[] dest, int offset);
+
+  /**
+   * Replaces a row of the layer with the given packed ARGB pixels.
+   * @param row - row to be replaced.
+   * @param src - array holding the new pixels.
+   * @param offset - position in src of the first pixel of the row.
    */
-  ArrayList getPixels();
+  void setRow(int row, int[] src, int offset);
 
 }
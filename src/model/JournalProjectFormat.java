@@ -0,0 +1,385 @@
+package model;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Represents the journaled project format, meant for projects that are saved often. A journal
+ * starts with a header holding the characters "CJ", the format version and the width, height and
+ * max value of the canvas. Every save then appends records to the end of the file: a layer record
+ * with the name, filter and pixel content of a layer whose pixels changed, a filter record with
+ * the name and new filter of a layer whose filter changed, and finally a commit record listing
+ * the layers of the project, bottom first. Only the changes are appended, so saving after a small
+ * edit takes time proportional to the edit rather than to the project.
+ *
+ * <p>Loading a journal replays its records: every layer takes the pixels of its latest layer
+ * record and the filter of its latest layer or filter record. Records after the last commit
+ * belong to a save that did not complete and are ignored. As saves pile up the journal holds more
+ * and more stale pixels, so it should be compacted from time to time by writing a fresh journal
+ * holding only the current layers, see {@link #shouldCompact}. Pixel content is stored as in
+ * {@link BinaryProjectFormat} and is read lazily in the same way. All numbers are big-endian;
+ * names and filters are stored as by {@link DataOutputStream#writeUTF}.
+ */
+public final class JournalProjectFormat {
+
+  /**
+   * File extension of journaled projects.
+   */
+  public static final String EXTENSION = "cj";
+
+  /**
+   * Version of the format written by this class.
+   */
+  public static final int VERSION = 1;
+
+  private static final byte LAYER_RECORD = 'L';
+  private static final byte FILTER_RECORD = 'F';
+  private static final byte COMMIT_RECORD = 'C';
+  private static final int HEADER_SIZE = 2 + 4 * Integer.BYTES;
+  private static final int BUFFER_SIZE = 1 << 16;
+  private static final int COMPACTION_RATIO = 2;
+
+  private JournalProjectFormat() {
+  }
+
+  /**
+   * Checks whether a project saved under the given name should use the journaled format, which is
+   * the case when the name ends in the journal extension.
+   * @param fileName - name the project is saved under.
+   * @return true if the name ends in ".cj".
+   */
+  public static boolean isJournalProjectName(String fileName) {
+    return fileName.toLowerCase().endsWith("." + EXTENSION);
+  }
+
+  /**
+   * Checks whether a file holds a journaled project by looking at its first characters.
+   * @param file - file to be checked.
+   * @return true if the file starts like a journaled project.
+   * @throws IOException - if the file cannot be read.
+   */
+  public static boolean isJournalProject(Path file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      ByteBuffer magic = ByteBuffer.allocate(2);
+      while (magic.hasRemaining() && channel.read(magic) >= 0) {
+        continue;
+      }
+      return magic.position() == 2 && magic.get(0) == 'C' && magic.get(1) == 'J';
+    }
+  }
+
+  /**
+   * Checks whether a journal has grown enough to be worth compacting, which is the case once it
+   * is more than twice the size a freshly written journal of the project would be.
+   * @param journalSize - size in bytes of the journal.
+   * @param width - width of the canvas.
+   * @param height - height of the canvas.
+   * @param layerCount - number of layers of the project.
+   * @return true if the journal should be compacted.
+   */
+  public static boolean shouldCompact(long journalSize, int width, int height, int layerCount) {
+    long compactedSize = HEADER_SIZE + (long) layerCount * (1 + (long) width * height
+            * Integer.BYTES);
+    return journalSize > COMPACTION_RATIO * compactedSize;
+  }
+
+  /**
+   * Reads a journaled project by replaying its records up to the last commit. Each layer is
+   * returned as a {@link LazyLayer} holding a read-only mapping of its latest pixel content, as
+   * done by {@link BinaryProjectFormat#read}.
+   * @param file - journaled project file.
+   * @return the canvas content (width, height and maxValue) followed by the layers of the
+   *         project, in the form taken by {@link CollageModel#loadProject}.
+   * @throws IllegalArgumentException - if the file is not a valid journaled project or holds no
+   *                                  complete save.
+   * @throws IOException - if the file cannot be read.
+   */
+  public static LinkedHashMap[] read(Path file) throws IllegalArgumentException, IOException {
+    LinkedHashMap<String, Integer> canvasContent = new LinkedHashMap<>();
+    LinkedHashMap<String, ILayer> projectContentMap = new LinkedHashMap<>();
+
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      ChannelInput input = new ChannelInput(channel);
+      DataInputStream records = new DataInputStream(input);
+      int width;
+      int height;
+      try {
+        if (records.readByte() != 'C' || records.readByte() != 'J') {
+          throw new IllegalArgumentException("Invalid Collage file: journal file should begin "
+                  + "with CJ");
+        }
+        int version = records.readInt();
+        if (version != VERSION) {
+          throw new IllegalArgumentException("Unsupported journal project version " + version);
+        }
+        width = records.readInt();
+        height = records.readInt();
+        int maxValue = records.readInt();
+        if (width < 0 || height < 0) {
+          throw new IllegalArgumentException("Invalid Collage file: negative dimensions");
+        }
+        if (maxValue < 1 || maxValue > RasterLayer.MAX_COMPONENT) {
+          throw new IllegalArgumentException("Invalid Collage file: max value should be between 1 "
+                  + "and " + RasterLayer.MAX_COMPONENT);
+        }
+        canvasContent.put("width", width);
+        canvasContent.put("height", height);
+        canvasContent.put("maxValue", maxValue);
+      } catch (EOFException e) {
+        throw new IllegalArgumentException("Invalid Collage file: file ended early");
+      }
+
+      long layerLength = (long) width * height * Integer.BYTES;
+      Map<String, Long> offsets = new HashMap<>();
+      Map<String, Filter> filters = new HashMap<>();
+      Map<String, Long> pendingOffsets = new HashMap<>();
+      Map<String, Filter> pendingFilters = new HashMap<>();
+      List<String> order = null;
+      try {
+        for (int type = records.read(); type != -1; type = records.read()) {
+          if (type == LAYER_RECORD) {
+            String name = records.readUTF();
+            checkFirstRecord(pendingFilters, name);
+            pendingFilters.put(name, stringToFilterOption(records.readUTF()));
+            pendingOffsets.put(name, input.position());
+            // the input skips within the file, so it only falls short at the end of the file
+            if (records.skip(layerLength) != layerLength) {
+              throw new EOFException();
+            }
+          } else if (type == FILTER_RECORD) {
+            String name = records.readUTF();
+            checkFirstRecord(pendingFilters, name);
+            pendingFilters.put(name, stringToFilterOption(records.readUTF()));
+          } else if (type == COMMIT_RECORD) {
+            int layerCount = records.readInt();
+            List<String> names = new ArrayList<>();
+            Set<String> seen = new HashSet<>();
+            for (int i = 0; i < layerCount; i++) {
+              String name = records.readUTF();
+              if (!seen.add(name)) {
+                throw new IllegalArgumentException("Invalid Collage file: duplicate layer "
+                        + name);
+              }
+              names.add(name);
+            }
+            for (String name : pendingFilters.keySet()) {
+              if (!seen.contains(name)) {
+                throw new IllegalArgumentException("Invalid Collage file: record for unknown "
+                        + "layer " + name);
+              }
+            }
+            offsets.putAll(pendingOffsets);
+            filters.putAll(pendingFilters);
+            pendingOffsets.clear();
+            pendingFilters.clear();
+            order = names;
+          } else {
+            throw new IllegalArgumentException("Invalid Collage file: unknown journal record");
+          }
+        }
+      } catch (EOFException e) {
+        // the last save did not complete, so its records are left out
+      }
+      if (order == null) {
+        throw new IllegalArgumentException("Invalid Collage file: journal holds no complete "
+                + "save");
+      }
+
+      for (String name : order) {
+        if (!offsets.containsKey(name)) {
+          throw new IllegalArgumentException("Invalid Collage file: layer " + name
+                  + " has no content");
+        }
+        // mapping does not read the file; the pages are only read when the layer is decoded
+        MappedByteBuffer chunk = channel.map(FileChannel.MapMode.READ_ONLY, offsets.get(name),
+                layerLength);
+        projectContentMap.put(name, new LazyLayer(filters.get(name), height, width, () -> {
+          int[] raster = new int[width * height];
+          chunk.duplicate().asIntBuffer().get(raster);
+          return raster;
+        }));
+      }
+    }
+
+    LinkedHashMap[] projectContent = {canvasContent, projectContentMap};
+    return projectContent;
+  }
+
+  /**
+   * Checks that a layer has no other record in the save being read, as each save writes at most
+   * one layer or filter record for every layer.
+   * @param pendingFilters - filters of the layers having a record in the save so far.
+   * @param name - name of the layer of the record.
+   * @throws IllegalArgumentException - if the layer already has a record in the save.
+   */
+  private static void checkFirstRecord(Map<String, Filter> pendingFilters, String name)
+          throws IllegalArgumentException {
+    if (pendingFilters.containsKey(name)) {
+      throw new IllegalArgumentException("Invalid Collage file: duplicate layer " + name);
+    }
+  }
+
+  /**
+   * Writes the records of one save, ended by a commit record.
+   * @param out - stream the records are written to, either a new file or the end of the journal
+   *            the previous save went to. It is flushed but not closed.
+   * @param width - width of the canvas.
+   * @param height - height of the canvas.
+   * @param maxValue - max value of the project.
+   * @param layers - layers of the project, bottom first.
+   * @param changedLayers - names of the layers whose pixel content is written.
+   * @param changedFilters - names of the layers whose filter is written. Layers whose pixel
+   *                       content is written already carry their filter.
+   * @param premultiplied - true if the layers are stored premultiplied, in which case they are
+   *                      written with straight colors.
+   * @param header - true to start a new journal with its header.
+   * @throws IOException - if the stream cannot be written to.
+   */
+  static void write(OutputStream out, int width, int height, int maxValue,
+                    Map<String, ILayer> layers, Collection<String> changedLayers,
+                    Collection<String> changedFilters, boolean premultiplied, boolean header)
+          throws IOException {
+    DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out, BUFFER_SIZE));
+    if (header) {
+      data.writeByte('C');
+      data.writeByte('J');
+      data.writeInt(VERSION);
+      data.writeInt(width);
+      data.writeInt(height);
+      data.writeInt(maxValue);
+    }
+
+    ByteBuffer chunk = ByteBuffer.allocate(BUFFER_SIZE);
+    for (Map.Entry<String, ILayer> layer : layers.entrySet()) {
+      if (changedLayers.contains(layer.getKey())) {
+        data.writeByte(LAYER_RECORD);
+        data.writeUTF(layer.getKey());
+        data.writeUTF(layer.getValue().getFilterOption().getValue());
+        BinaryProjectFormat.writeRaster(data, layer.getValue().getRaster(), width * height,
+                premultiplied, chunk);
+      } else if (changedFilters.contains(layer.getKey())) {
+        data.writeByte(FILTER_RECORD);
+        data.writeUTF(layer.getKey());
+        data.writeUTF(layer.getValue().getFilterOption().getValue());
+      }
+    }
+
+    data.writeByte(COMMIT_RECORD);
+    data.writeInt(layers.size());
+    for (String name : layers.keySet()) {
+      data.writeUTF(name);
+    }
+    data.flush();
+  }
+
+  /**
+   * Finds the given filter after looking at it's filter command as a string.
+   * @param filterCommand - a string corresponding to a respective filter command.
+   * @return - a Filter corresponding to the string provided.
+   * @throws IllegalArgumentException - if no filter has the given name.
+   */
+  private static Filter stringToFilterOption(String filterCommand)
+          throws IllegalArgumentException {
+    for (Filter fil : Filter.values()) {
+      if (fil.getValue().equals(filterCommand)) {
+        return fil;
+      }
+    }
+    throw new IllegalArgumentException("Filter does not exist");
+  }
+
+  /**
+   * Reads a file channel through a buffer while keeping track of the position in the file, so
+   * that the pixel content of layer records can be located and skipped without being read.
+   */
+  private static final class ChannelInput extends InputStream {
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private long bufferStart;
+
+    /**
+     * Initializes an input reading the channel from its start.
+     * @param channel - channel to be read.
+     */
+    private ChannelInput(FileChannel channel) {
+      this.channel = channel;
+      this.buffer = ByteBuffer.allocate(BUFFER_SIZE);
+      this.buffer.flip();
+      this.bufferStart = 0;
+    }
+
+    /**
+     * Returns the position in the file of the next byte to be read.
+     * @return the position of the next byte.
+     */
+    private long position() {
+      return this.bufferStart + this.buffer.position();
+    }
+
+    /**
+     * Reads the bytes following the buffer into it.
+     * @return false if the end of the file has been reached.
+     * @throws IOException - if the file cannot be read.
+     */
+    private boolean fill() throws IOException {
+      this.bufferStart += this.buffer.limit();
+      this.buffer.clear();
+      int read = this.channel.read(this.buffer, this.bufferStart);
+      this.buffer.flip();
+      return read > 0;
+    }
+
+    @Override
+    public int read() throws IOException {
+      if (!this.buffer.hasRemaining() && !fill()) {
+        return -1;
+      }
+      return this.buffer.get() & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (len == 0) {
+        return 0;
+      }
+      if (!this.buffer.hasRemaining() && !fill()) {
+        return -1;
+      }
+      int count = Math.min(len, this.buffer.remaining());
+      this.buffer.get(b, off, count);
+      return count;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+      long target = Math.min(position() + Math.max(n, 0), this.channel.size());
+      long skipped = target - position();
+      if (target <= this.bufferStart + this.buffer.limit()) {
+        this.buffer.position((int) (target - this.bufferStart));
+      } else {
+        this.bufferStart = target;
+        this.buffer.clear();
+        this.buffer.flip();
+      }
+      return skipped;
+    }
+  }
+}
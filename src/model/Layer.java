@@ -61,9 +61,71 @@ public class Layer implements ILayer {
     return this;
   }
 
+  @Override
+  public ILayer changeRaster(int[] raster) throws IllegalArgumentException {
+    int height = getHeight();
+    int width = getWidth();
+    if (raster == null || raster.length != height * width) {
+      throw new IllegalArgumentException("Raster does not match the layer dimensions.");
+    }
+    for (int h = 0; h < height; h++) {
+      setRow(h, raster, h * width);
+    }
+    return this;
+  }
+
   @Override
   public ArrayList getPixels() {
     return this.pixels;
   }
 
+  @Override
+  public int getHeight() {
+    return this.pixels.size();
+  }
+
+  @Override
+  public int getWidth() {
+    if (this.pixels.isEmpty()) {
+      return 0;
+    }
+    return ((ArrayList) this.pixels.get(0)).size();
+  }
+
+  /**
+   * Returns a packed copy of the pixel content of the layer. Changes to the returned array are not
+   * reflected in the layer.
+   * @return the packed pixel content of the layer.
+   */
+  @Override
+  public int[] getRaster() {
+    int height = getHeight();
+    int width = getWidth();
+    int[] raster = new int[height * width];
+    for (int h = 0; h < height; h++) {
+      getRow(h, raster, h * width);
+    }
+    return raster;
+  }
+
+  @Override
+  public void getRow(int row, int[] dest, int offset) {
+    ArrayList<IPixels> pixelList = (ArrayList<IPixels>) this.pixels.get(row);
+    for (int w = 0; w < pixelList.size(); w++) {
+      IPixels pixel = pixelList.get(w);
+      dest[offset + w] = RasterLayer.pack(pixel.getRedComponent(), pixel.getGreenComponent(),
+              pixel.getBlueComponent(), pixel.getAlphaComponent());
+    }
+  }
+
+  @Override
+  public void setRow(int row, int[] src, int offset) {
+    ArrayList pixelList = (ArrayList) this.pixels.get(row);
+    for (int w = 0; w < pixelList.size(); w++) {
+      int argb = src[offset + w];
+      pixelList.set(w, new Pixels(new Coord(row, w), RasterLayer.red(argb),
+              RasterLayer.green(argb), RasterLayer.blue(argb), RasterLayer.alpha(argb)));
+    }
+  }
+
 }
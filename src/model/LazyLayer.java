@@ -0,0 +1,153 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Represents a Layer whose pixel content is only decoded the first time it is needed. Until then
+ * the layer only knows its filter option and dimensions, so operations that only look at or change
+ * those, such as changing the filter, do not pay for decoding. Once decoded, the layer behaves as
+ * a {@link RasterLayer}. Decoding happens at most once, even when several threads ask for the
+ * pixel content at the same time.
+ */
+public class LazyLayer implements ILayer {
+  private Filter filter;
+  private int height;
+  private int width;
+  private Supplier<int[]> decoder;
+  private volatile RasterLayer layer;
+
+  /**
+   * Initializes a layer whose pixel content is supplied by the given decoder.
+   * @param filter - filter option of the layer.
+   * @param height - height of the layer.
+   * @param width - width of the layer.
+   * @param decoder - supplies the packed ARGB content of the layer, height * width pixels. Called
+   *                at most once.
+   * @throws IllegalArgumentException - if the dimensions are negative or the decoder is null.
+   */
+  public LazyLayer(Filter filter, int height, int width, Supplier<int[]> decoder)
+          throws IllegalArgumentException {
+    if (height < 0 || width < 0 || decoder == null) {
+      throw new IllegalArgumentException("Invalid layer dimensions or decoder.");
+    }
+    this.filter = filter;
+    this.height = height;
+    this.width = width;
+    this.decoder = decoder;
+    this.layer = null;
+  }
+
+  /**
+   * Checks whether the pixel content of the layer has been decoded.
+   * @return true if the pixel content has been decoded.
+   */
+  public boolean isDecoded() {
+    return this.layer != null;
+  }
+
+  /**
+   * Returns the decoded layer, decoding it first if needed.
+   * @return the decoded layer.
+   * @throws IllegalStateException - if the decoder does not supply content of the right size.
+   */
+  private RasterLayer decoded() throws IllegalStateException {
+    RasterLayer decodedLayer = this.layer;
+    if (decodedLayer == null) {
+      synchronized (this) {
+        decodedLayer = this.layer;
+        if (decodedLayer == null) {
+          try {
+            decodedLayer = new RasterLayer(this.filter, this.height, this.width,
+                    this.decoder.get());
+          } catch (IllegalArgumentException e) {
+            throw new IllegalStateException("Layer content does not match its dimensions.");
+          }
+          this.decoder = null;
+          this.layer = decodedLayer;
+        }
+      }
+    }
+    return decodedLayer;
+  }
+
+  @Override
+  public ILayer changeFilterOption(Filter filter) {
+    synchronized (this) {
+      this.filter = filter;
+      if (this.layer != null) {
+        this.layer.changeFilterOption(filter);
+      }
+    }
+    return this;
+  }
+
+  @Override
+  public Filter getFilterOption() {
+    return this.filter;
+  }
+
+  @Override
+  public ILayer changePixels(ArrayList pixels) {
+    replace(new RasterLayer(this.filter, 0, 0, new int[0]));
+    this.layer.changePixels(pixels);
+    this.height = this.layer.getHeight();
+    this.width = this.layer.getWidth();
+    return this;
+  }
+
+  @Override
+  public ILayer changeRaster(int[] raster) throws IllegalArgumentException {
+    replace(new RasterLayer(this.filter, this.height, this.width, raster));
+    return this;
+  }
+
+  @Override
+  public ILayer addNewLayer(Filter filter, int height, int width, int maxValue, int value) {
+    replace(new RasterLayer().addNewLayer(filter, height, width, maxValue, value));
+    this.filter = filter;
+    this.height = height;
+    this.width = width;
+    return this;
+  }
+
+  /**
+   * Replaces the content of the layer without decoding it.
+   * @param newLayer - new content of the layer.
+   */
+  private synchronized void replace(RasterLayer newLayer) {
+    this.decoder = null;
+    this.layer = newLayer;
+  }
+
+  @Override
+  public List getPixels() {
+    return decoded().getPixels();
+  }
+
+  @Override
+  public int getHeight() {
+    return this.height;
+  }
+
+  @Override
+  public int getWidth() {
+    return this.width;
+  }
+
+  @Override
+  public int[] getRaster() {
+    return decoded().getRaster();
+  }
+
+  @Override
+  public void getRow(int row, int[] dest, int offset) {
+    decoded().getRow(row, dest, offset);
+  }
+
+  @Override
+  public void setRow(int row, int[] src, int offset) {
+    decoded().setRow(row, src, offset);
+  }
+}
@@ -0,0 +1,121 @@
+package model;
+
+/**
+ * Represents a movable view of a single pixel inside a packed ARGB raster. Reads and changes made
+ * through the cursor go straight to the raster, so a single cursor can be moved across every pixel
+ * of a layer instead of allocating a pixel object for each one. The coordinate of the pixel is
+ * derived from the cursor's position whenever it is asked for.
+ * A cursor only ever points at one pixel; callers must not hold on to it as a pixel value once it
+ * has been moved.
+ */
+public class PixelCursor implements IPixels {
+  private final int[] raster;
+  private final int width;
+  private int index;
+
+  /**
+   * Initializes a cursor over the given raster, positioned at its first pixel.
+   * @param raster - packed ARGB pixels, one int per pixel in row-major order.
+   * @param width - width of a row of the raster.
+   */
+  public PixelCursor(int[] raster, int width) {
+    this.raster = raster;
+    this.width = width;
+    this.index = 0;
+  }
+
+  /**
+   * Moves the cursor to the pixel at the given position.
+   * @param row - row of the pixel.
+   * @param col - column of the pixel.
+   * @return this cursor, now pointing at the given pixel.
+   * @throws IndexOutOfBoundsException - if the position lies outside the raster.
+   */
+  public PixelCursor moveTo(int row, int col) throws IndexOutOfBoundsException {
+    int newIndex = row * this.width + col;
+    if (row < 0 || col < 0 || col >= this.width || newIndex >= this.raster.length) {
+      throw new IndexOutOfBoundsException("Pixel " + new Coord(row, col) + " is outside the "
+              + "raster.");
+    }
+    this.index = newIndex;
+    return this;
+  }
+
+  @Override
+  public Coord getCoord() {
+    return new Coord(this.index / this.width, this.index % this.width);
+  }
+
+  @Override
+  public int getRedComponent() {
+    return RasterLayer.red(this.raster[this.index]);
+  }
+
+  @Override
+  public int getGreenComponent() {
+    return RasterLayer.green(this.raster[this.index]);
+  }
+
+  @Override
+  public int getBlueComponent() {
+    return RasterLayer.blue(this.raster[this.index]);
+  }
+
+  @Override
+  public int getAlphaComponent() {
+    return RasterLayer.alpha(this.raster[this.index]);
+  }
+
+  /**
+   * Packed pixels carry no HSL representation, as with an RGBA {@link Pixels}.
+   * @return 0.
+   */
+  @Override
+  public double getHueComponent() {
+    return 0;
+  }
+
+  /**
+   * Packed pixels carry no HSL representation, as with an RGBA {@link Pixels}.
+   * @return 0.
+   */
+  @Override
+  public double getSaturationComponent() {
+    return 0;
+  }
+
+  /**
+   * Packed pixels carry no HSL representation, as with an RGBA {@link Pixels}.
+   * @return 0.
+   */
+  @Override
+  public double getLightnessComponent() {
+    return 0;
+  }
+
+  @Override
+  public void changeRedComponent(int component) {
+    this.raster[this.index] = (this.raster[this.index] & 0xFF00FFFF) | (component & 0xFF) << 16;
+  }
+
+  @Override
+  public void changeGreenComponent(int component) {
+    this.raster[this.index] = (this.raster[this.index] & 0xFFFF00FF) | (component & 0xFF) << 8;
+  }
+
+  @Override
+  public void changeBlueComponent(int component) {
+    this.raster[this.index] = (this.raster[this.index] & 0xFFFFFF00) | (component & 0xFF);
+  }
+
+  @Override
+  public String pixelToString() {
+    return getRedComponent() + " " + getGreenComponent() + " " + getBlueComponent() + " "
+            + getAlphaComponent() + "\n";
+  }
+
+  @Override
+  public String pixelToStringPPM() {
+    return getRedComponent() + " " + getGreenComponent() + " " + getBlueComponent() + " ";
+  }
+}
@@ -0,0 +1,246 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Holds the state of a project as it was at one moment: the canvas, the layers in order and the
+ * filter of each layer. Later edits to the project do not show in the snapshot, so it can be read
+ * on any thread while the project keeps being edited.
+ *
+ * <p>The pixels of the layers are shared with the project rather than copied. The project copies a
+ * layer the first time it changes the layer's pixels while a snapshot still holds it, so taking a
+ * snapshot costs nothing per pixel and only the layers edited meanwhile are ever copied. Closing
+ * the snapshot tells the project it no longer needs to copy them; a snapshot that is never closed
+ * only costs one copy of each layer edited after it was taken.
+ */
+public final class ProjectSnapshot implements AutoCloseable {
+  private final boolean projectLoaded;
+  private final int width;
+  private final int height;
+  private final int maxValue;
+  private final boolean premultiplied;
+  private final String fileExtension;
+  private final Map<String, ILayer> layers;
+  private final Runnable release;
+  private final AtomicBoolean closed;
+
+  /**
+   * Initializes a snapshot.
+   * @param projectLoaded - true if a project has been created or loaded.
+   * @param width - width of the canvas.
+   * @param height - height of the canvas.
+   * @param maxValue - max value of the project.
+   * @param premultiplied - true if the layers are stored premultiplied.
+   * @param fileExtension - intended file extension of the project.
+   * @param layers - layers of the project, bottom first. Their pixels must not change while the
+   *               snapshot is open.
+   * @param release - tells the project the snapshot is closed.
+   */
+  ProjectSnapshot(boolean projectLoaded, int width, int height, int maxValue,
+                  boolean premultiplied, String fileExtension, Map<String, ILayer> layers,
+                  Runnable release) {
+    this.projectLoaded = projectLoaded;
+    this.width = width;
+    this.height = height;
+    this.maxValue = maxValue;
+    this.premultiplied = premultiplied;
+    this.fileExtension = fileExtension;
+    LinkedHashMap<String, ILayer> frozen = new LinkedHashMap<String, ILayer>();
+    for (Map.Entry<String, ILayer> layer : layers.entrySet()) {
+      frozen.put(layer.getKey(), new FrozenLayer(layer.getValue()));
+    }
+    this.layers = Collections.unmodifiableMap(frozen);
+    this.release = release;
+    this.closed = new AtomicBoolean(false);
+  }
+
+  /**
+   * Tells whether a project had been created or loaded when the snapshot was taken.
+   * @return true if there was a project.
+   */
+  boolean isProjectLoaded() {
+    return this.projectLoaded;
+  }
+
+  /**
+   * Returns the layers of the snapshot. They throw an IllegalStateException when asked to change.
+   * @return the layers, bottom first.
+   */
+  Map<String, ILayer> layers() {
+    return this.layers;
+  }
+
+  /**
+   * Returns a layer of the snapshot.
+   * @param layerName - name of the layer.
+   * @return the layer, which cannot be changed.
+   * @throws IllegalArgumentException - if the project had no such layer.
+   */
+  ILayer layer(String layerName) throws IllegalArgumentException {
+    ILayer layer = this.layers.get(layerName);
+    if (layer == null) {
+      throw new IllegalArgumentException("Layer does not exist.");
+    }
+    return layer;
+  }
+
+  /**
+   * Returns the width of the canvas.
+   * @return the width of the canvas.
+   */
+  public int getWidth() {
+    return this.width;
+  }
+
+  /**
+   * Returns the height of the canvas.
+   * @return the height of the canvas.
+   */
+  public int getHeight() {
+    return this.height;
+  }
+
+  /**
+   * Returns the max value of the project.
+   * @return the largest value of a component.
+   */
+  public int maxValue() {
+    return this.maxValue;
+  }
+
+  /**
+   * Tells how the pixels of the layers are stored.
+   * @return true if their color components are premultiplied by alpha.
+   */
+  public boolean isPremultiplied() {
+    return this.premultiplied;
+  }
+
+  /**
+   * Gets the intended file extension.
+   * @return the extension of the last image added to the project.
+   */
+  public String getFileExtension() {
+    return this.fileExtension;
+  }
+
+  /**
+   * Lists the layers of the project.
+   * @return the names of the layers, bottom first.
+   */
+  public List<String> getLayerNames() {
+    return new ArrayList<String>(this.layers.keySet());
+  }
+
+  /**
+   * Returns the filter a layer had.
+   * @param layerName - name of the layer.
+   * @return the filter of the layer.
+   * @throws IllegalArgumentException - if the project had no such layer.
+   */
+  public Filter getFilter(String layerName) throws IllegalArgumentException {
+    return layer(layerName).getFilterOption();
+  }
+
+  /**
+   * Copies a row of packed ARGB pixels out of a layer, as they are stored in the project.
+   * @param layerName - name of the layer.
+   * @param row - row to be copied.
+   * @param dest - array the row is copied into.
+   * @param offset - position in dest of the first pixel of the row.
+   * @throws IllegalArgumentException - if the project had no such layer.
+   */
+  public void getRow(String layerName, int row, int[] dest, int offset)
+          throws IllegalArgumentException {
+    layer(layerName).getRow(row, dest, offset);
+  }
+
+  /**
+   * Lets the project change the layers of the snapshot in place again. The snapshot must not be
+   * read once it is closed. Closing it more than once has no further effect.
+   */
+  @Override
+  public void close() {
+    if (this.closed.compareAndSet(false, true)) {
+      this.release.run();
+    }
+  }
+
+  /**
+   * A layer of the snapshot. It keeps the filter the layer had when the snapshot was taken, and
+   * reads its pixels from the layer of the project, which are not changed while it is shared.
+   */
+  private static final class FrozenLayer implements ILayer {
+    private final ILayer layer;
+    private final Filter filter;
+
+    /**
+     * Initializes a view of a layer.
+     * @param layer - layer of the project.
+     */
+    private FrozenLayer(ILayer layer) {
+      this.layer = layer;
+      this.filter = layer.getFilterOption();
+    }
+
+    @Override
+    public ILayer changeFilterOption(Filter filter) {
+      throw new IllegalStateException("Layers of a snapshot cannot be changed.");
+    }
+
+    @Override
+    public ILayer changePixels(ArrayList pixels) {
+      throw new IllegalStateException("Layers of a snapshot cannot be changed.");
+    }
+
+    @Override
+    public ILayer changeRaster(int[] raster) {
+      throw new IllegalStateException("Layers of a snapshot cannot be changed.");
+    }
+
+    @Override
+    public ILayer addNewLayer(Filter filter, int height, int width, int maxValue, int value) {
+      throw new IllegalStateException("Layers of a snapshot cannot be changed.");
+    }
+
+    @Override
+    public void setRow(int row, int[] src, int offset) {
+      throw new IllegalStateException("Layers of a snapshot cannot be changed.");
+    }
+
+    @Override
+    public Filter getFilterOption() {
+      return this.filter;
+    }
+
+    @Override
+    public List getPixels() {
+      return this.layer.getPixels();
+    }
+
+    @Override
+    public int getHeight() {
+      return this.layer.getHeight();
+    }
+
+    @Override
+    public int getWidth() {
+      return this.layer.getWidth();
+    }
+
+    @Override
+    public int[] getRaster() {
+      return this.layer.getRaster();
+    }
+
+    @Override
+    public void getRow(int row, int[] dest, int offset) {
+      this.layer.getRow(row, dest, offset);
+    }
+  }
+}
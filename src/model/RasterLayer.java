@@ -0,0 +1,301 @@
+package model;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Represents a Layer whose pixel content is stored in a single packed array. Every pixel takes one
+ * int holding its alpha, red, green and blue components (alpha in the highest byte), and rows are
+ * laid out one after the other, so the pixel at (row, col) lives at index row * width + col.
+ * Components are stored as 8-bit values, so a project's max value cannot be larger than
+ * {@value #MAX_COMPONENT}. Projects and images holding larger values are rejected when they are
+ * read rather than wrapped when they are packed.
+ */
+public class RasterLayer implements ILayer {
+  /**
+   * Largest value a component can hold.
+   */
+  public static final int MAX_COMPONENT = 255;
+
+  private int[] raster;
+  private int height;
+  private int width;
+  private Filter filter;
+
+  /**
+   * Initializes an empty layer with no pixel content.
+   */
+  public RasterLayer() {
+    this.raster = new int[0];
+    this.height = 0;
+    this.width = 0;
+  }
+
+  /**
+   * Initializes the filter and pixel fields.
+   * @param filter - specified filter option.
+   * @param height - height of the layer.
+   * @param width - width of the layer.
+   * @param raster - packed ARGB content of the layer, must hold height * width pixels.
+   * @throws IllegalArgumentException - if the raster does not match the given dimensions.
+   */
+  public RasterLayer(Filter filter, int height, int width, int[] raster)
+          throws IllegalArgumentException {
+    if (height < 0 || width < 0 || raster == null || raster.length != height * width) {
+      throw new IllegalArgumentException("Raster does not match the layer dimensions.");
+    }
+    this.filter = filter;
+    this.height = height;
+    this.width = width;
+    this.raster = raster;
+  }
+
+  /**
+   * Creates a packed layer holding the same content as the given layer.
+   * @param layer - layer to be converted.
+   * @return the given layer if it is already packed, otherwise a packed copy of it.
+   */
+  public static RasterLayer from(ILayer layer) {
+    if (layer instanceof RasterLayer) {
+      return (RasterLayer) layer;
+    }
+    return new RasterLayer(layer.getFilterOption(), layer.getHeight(), layer.getWidth(),
+            layer.getRaster());
+  }
+
+  @Override
+  public RasterLayer addNewLayer(Filter filter, int height, int width, int maxValue, int value) {
+    this.filter = filter;
+    this.height = height;
+    this.width = width;
+    this.raster = new int[height * width];
+    Arrays.fill(this.raster, pack(maxValue, maxValue, maxValue, value));
+    return this;
+  }
+
+  @Override
+  public Filter getFilterOption() {
+    return this.filter;
+  }
+
+  @Override
+  public ILayer changeFilterOption(Filter filter) {
+    this.filter = filter;
+    return this;
+  }
+
+  @Override
+  public ILayer changePixels(ArrayList pixels) {
+    ArrayList<ArrayList<IPixels>> pixelList = pixels;
+    int newHeight = pixelList.size();
+    int newWidth = newHeight == 0 ? 0 : pixelList.get(0).size();
+    int[] newRaster = new int[newHeight * newWidth];
+    for (int h = 0; h < newHeight; h++) {
+      ArrayList<IPixels> row = pixelList.get(h);
+      for (int w = 0; w < newWidth && w < row.size(); w++) {
+        IPixels pixel = row.get(w);
+        newRaster[h * newWidth + w] = pack(pixel.getRedComponent(), pixel.getGreenComponent(),
+                pixel.getBlueComponent(), pixel.getAlphaComponent());
+      }
+    }
+    this.height = newHeight;
+    this.width = newWidth;
+    this.raster = newRaster;
+    return this;
+  }
+
+  @Override
+  public ILayer changeRaster(int[] raster) throws IllegalArgumentException {
+    if (raster == null || raster.length != this.height * this.width) {
+      throw new IllegalArgumentException("Raster does not match the layer dimensions.");
+    }
+    this.raster = raster;
+    return this;
+  }
+
+  /**
+   * Returns a view of the pixel content of the layer as rows of pixels. The view reads and writes
+   * through to the layer's current raster rather than copying it, and every pixel it hands out is
+   * the same {@link PixelCursor} moved to the requested position, so a pixel must be used before
+   * the next one is looked up.
+   * @return rows of pixels backed by the layer's raster.
+   */
+  @Override
+  public List<List<IPixels>> getPixels() {
+    return new PixelRows(new PixelCursor(this.raster, this.width), this.height, this.width);
+  }
+
+  @Override
+  public int getHeight() {
+    return this.height;
+  }
+
+  @Override
+  public int getWidth() {
+    return this.width;
+  }
+
+  @Override
+  public int[] getRaster() {
+    return this.raster;
+  }
+
+  @Override
+  public void getRow(int row, int[] dest, int offset) {
+    System.arraycopy(this.raster, row * this.width, dest, offset, this.width);
+  }
+
+  @Override
+  public void setRow(int row, int[] src, int offset) {
+    System.arraycopy(src, offset, this.raster, row * this.width, this.width);
+  }
+
+  /**
+   * Packs the given components into a single ARGB pixel. Each component must lie between 0 and
+   * {@value #MAX_COMPONENT}; only its lowest 8 bits are kept.
+   * @param red - red component of the pixel.
+   * @param green - green component of the pixel.
+   * @param blue - blue component of the pixel.
+   * @param alpha - alpha component of the pixel.
+   * @return the packed pixel.
+   */
+  public static int pack(int red, int green, int blue, int alpha) {
+    return (alpha & 0xFF) << 24 | (red & 0xFF) << 16 | (green & 0xFF) << 8 | (blue & 0xFF);
+  }
+
+  /**
+   * Multiplies the color components of a packed pixel by its alpha component.
+   * @param argb - packed pixel with straight color components.
+   * @return the packed pixel with premultiplied color components.
+   */
+  public static int premultiply(int argb) {
+    int alpha = alpha(argb);
+    if (alpha == 255) {
+      return argb;
+    }
+    return pack(red(argb) * alpha / 255, green(argb) * alpha / 255, blue(argb) * alpha / 255,
+            alpha);
+  }
+
+  /**
+   * Divides the color components of a packed pixel by its alpha component. Fully transparent
+   * pixels carry no color, so they become transparent black.
+   * @param argb - packed pixel with premultiplied color components.
+   * @return the packed pixel with straight color components.
+   */
+  public static int unpremultiply(int argb) {
+    int alpha = alpha(argb);
+    if (alpha == 255) {
+      return argb;
+    }
+    if (alpha == 0) {
+      return 0;
+    }
+    return pack(Math.min(255, (red(argb) * 255 + alpha / 2) / alpha),
+            Math.min(255, (green(argb) * 255 + alpha / 2) / alpha),
+            Math.min(255, (blue(argb) * 255 + alpha / 2) / alpha), alpha);
+  }
+
+  /**
+   * Returns the red component of a packed pixel.
+   * @param argb - packed pixel.
+   * @return the red component of the pixel.
+   */
+  public static int red(int argb) {
+    return (argb >> 16) & 0xFF;
+  }
+
+  /**
+   * Returns the green component of a packed pixel.
+   * @param argb - packed pixel.
+   * @return the green component of the pixel.
+   */
+  public static int green(int argb) {
+    return (argb >> 8) & 0xFF;
+  }
+
+  /**
+   * Returns the blue component of a packed pixel.
+   * @param argb - packed pixel.
+   * @return the blue component of the pixel.
+   */
+  public static int blue(int argb) {
+    return argb & 0xFF;
+  }
+
+  /**
+   * Returns the alpha component of a packed pixel.
+   * @param argb - packed pixel.
+   * @return the alpha component of the pixel.
+   */
+  public static int alpha(int argb) {
+    return (argb >>> 24);
+  }
+
+  /**
+   * Represents the rows of a packed raster as a list of rows of pixels, all sharing one cursor.
+   */
+  private static class PixelRows extends AbstractList<List<IPixels>> {
+    private final PixelCursor cursor;
+    private final int height;
+    private final int width;
+
+    /**
+     * Initializes the rows view.
+     * @param cursor - cursor shared by every pixel of the view.
+     * @param height - number of rows.
+     * @param width - number of pixels in each row.
+     */
+    PixelRows(PixelCursor cursor, int height, int width) {
+      this.cursor = cursor;
+      this.height = height;
+      this.width = width;
+    }
+
+    @Override
+    public List<IPixels> get(int row) {
+      if (row < 0 || row >= this.height) {
+        throw new IndexOutOfBoundsException("Row " + row + " is outside the raster.");
+      }
+      return new PixelRow(this.cursor, row, this.width);
+    }
+
+    @Override
+    public int size() {
+      return this.height;
+    }
+  }
+
+  /**
+   * Represents a single row of a packed raster as a list of pixels.
+   */
+  private static class PixelRow extends AbstractList<IPixels> {
+    private final PixelCursor cursor;
+    private final int row;
+    private final int width;
+
+    /**
+     * Initializes the row view.
+     * @param cursor - cursor shared by every pixel of the view.
+     * @param row - row of the raster represented by the view.
+     * @param width - number of pixels in the row.
+     */
+    PixelRow(PixelCursor cursor, int row, int width) {
+      this.cursor = cursor;
+      this.row = row;
+      this.width = width;
+    }
+
+    @Override
+    public IPixels get(int col) {
+      return this.cursor.moveTo(this.row, col);
+    }
+
+    @Override
+    public int size() {
+      return this.width;
+    }
+  }
+}
@@ -0,0 +1,46 @@
+package model;
+
+import java.awt.Rectangle;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+
+/**
+ * Represents an operation over a region of the canvas that is split into bands of whole rows, so
+ * the bands can be processed in parallel on a fork-join pool. The operation is applied to each
+ * band on its own, which means it must only touch pixels inside the band it is given.
+ */
+class RowBandTask extends RecursiveAction {
+  private static final long serialVersionUID = 1L;
+
+  private final Rectangle region;
+  private final int bandHeight;
+  private final Consumer<Rectangle> operation;
+
+  /**
+   * Initializes the task.
+   * @param region - region of the canvas to be processed.
+   * @param bandHeight - maximum number of rows processed by a single band.
+   * @param operation - operation applied to each band.
+   */
+  RowBandTask(Rectangle region, int bandHeight, Consumer<Rectangle> operation) {
+    this.region = region;
+    this.bandHeight = bandHeight;
+    this.operation = operation;
+  }
+
+  @Override
+  protected void compute() {
+    if (this.region.height <= this.bandHeight) {
+      this.operation.accept(this.region);
+      return;
+    }
+
+    int bands = (this.region.height + this.bandHeight - 1) / this.bandHeight;
+    int topHeight = (bands / 2) * this.bandHeight;
+    Rectangle top = new Rectangle(this.region.x, this.region.y, this.region.width, topHeight);
+    Rectangle bottom = new Rectangle(this.region.x, this.region.y + topHeight, this.region.width,
+            this.region.height - topHeight);
+    invokeAll(new RowBandTask(top, this.bandHeight, this.operation),
+            new RowBandTask(bottom, this.bandHeight, this.operation));
+  }
+}
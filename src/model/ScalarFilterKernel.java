@@ -0,0 +1,214 @@
+package model;
+
+/**
+ * Applies the filters one pixel at a time. This is the reference arithmetic of every filter and
+ * is always available. As in earlier versions, the value, intensity and luma filters write the
+ * changed blue component to green and the changed green component to blue, and the blending
+ * filters only replace the red component, using the blended blue component.
+ */
+public class ScalarFilterKernel implements FilterKernel {
+
+  @Override
+  public void filterComponent(int[] pixels, int offset, int length, int mask) {
+    for (int i = offset; i < offset + length; i++) {
+      pixels[i] &= mask;
+    }
+  }
+
+  @Override
+  public void changeComponentValue(int[] pixels, int offset, int length, boolean brighten,
+                                   int maxValue) {
+    for (int i = offset; i < offset + length; i++) {
+      int argb = pixels[i];
+      int maxVal = Math.max(RasterLayer.red(argb), RasterLayer.green(argb));
+      pixels[i] = changeComponent(argb, Math.max(maxVal, RasterLayer.blue(argb)), brighten,
+              maxValue);
+    }
+  }
+
+  @Override
+  public void changeComponentIntensity(int[] pixels, int offset, int length, boolean brighten,
+                                       int maxValue) {
+    for (int i = offset; i < offset + length; i++) {
+      int argb = pixels[i];
+      int maxComponent = (RasterLayer.red(argb) + RasterLayer.green(argb)
+              + RasterLayer.blue(argb)) / 3;
+      pixels[i] = changeComponent(argb, maxComponent, brighten, maxValue);
+    }
+  }
+
+  @Override
+  public void changeComponentLuma(int[] pixels, int offset, int length, boolean brighten,
+                                  int maxValue) {
+    for (int i = offset; i < offset + length; i++) {
+      int argb = pixels[i];
+      int maxComponent = (int) (0.2126 * RasterLayer.red(argb) + 0.7152 * RasterLayer.green(argb)
+              + 0.0722 * RasterLayer.blue(argb));
+      pixels[i] = changeComponent(argb, maxComponent, brighten, maxValue);
+    }
+  }
+
+  @Override
+  public void blendDifference(int[] current, int[] background, int offset, int length) {
+    for (int i = offset; i < offset + length; i++) {
+      int currentPixel = current[i];
+      // only the red component is replaced, with the difference of the blue components
+      int newComponentB = Math.abs(RasterLayer.blue(currentPixel)
+              - RasterLayer.blue(background[i]));
+      current[i] = (currentPixel & 0xFF00FFFF) | (newComponentB << 16);
+    }
+  }
+
+  @Override
+  public void blendLightness(int[] current, int[] background, int offset, int length,
+                             boolean screen, int maxValue) {
+    for (int i = offset; i < offset + length; i++) {
+      int currentPixel = current[i];
+      int backgroundPixel = background[i];
+      double currentComponentR = RasterLayer.red(currentPixel);
+      double currentComponentG = RasterLayer.green(currentPixel);
+      double currentComponentB = RasterLayer.blue(currentPixel);
+
+      double backgroundComponentR = RasterLayer.red(backgroundPixel);
+      double backgroundComponentG = RasterLayer.green(backgroundPixel);
+      double backgroundComponentB = RasterLayer.blue(backgroundPixel);
+
+      Pixels currentHSLRep = convertRGBToHSL(currentComponentR / 255,
+              currentComponentG / 255, currentComponentB / 255);
+      Pixels backgroundHSLRep = convertRGBToHSL(backgroundComponentR / 255,
+              backgroundComponentG / 225, backgroundComponentB / 255);
+
+      double lightness;
+      if (screen) {
+        lightness = 1 - ((1 - currentHSLRep.getLightnessComponent()) *
+                (1 - backgroundHSLRep.getLightnessComponent()));
+      } else {
+        lightness = currentHSLRep.getLightnessComponent() *
+                backgroundHSLRep.getLightnessComponent();
+      }
+      double[] newRGBComponent = convertHSLtoRGB(currentHSLRep.getHueComponent(),
+              currentHSLRep.getSaturationComponent(), lightness);
+
+      // only the red component is replaced, with the computed blue component
+      int newComponentB = checkComponentOutOfBound((int) newRGBComponent[2], maxValue);
+
+      current[i] = (currentPixel & 0xFF00FFFF) | (newComponentB << 16);
+    }
+  }
+
+  /**
+   * Brightens or darkens the r, g, b components of a pixel, keeping each within bounds.
+   * @param argb - packed pixel.
+   * @param maxComponent - value to be added or subtracted to each component r, g, b components.
+   *                     This value is computed based upon the type of filter operation being used.
+   * @param brighten - true to brighten, false to darken.
+   * @param maxValue - largest value a component can be brightened to.
+   * @return the packed pixel with its new components.
+   */
+  private static int changeComponent(int argb, int maxComponent, boolean brighten,
+                                     int maxValue) {
+    int redComponent = RasterLayer.red(argb);
+    int greenComponent = RasterLayer.green(argb);
+    int blueComponent = RasterLayer.blue(argb);
+    if (brighten) {
+      redComponent = Math.min(redComponent + maxComponent, maxValue);
+      greenComponent = Math.min(greenComponent + maxComponent, maxValue);
+      blueComponent = Math.min(blueComponent + maxComponent, maxValue);
+    } else {
+      redComponent = Math.max(redComponent - maxComponent, 0);
+      greenComponent = Math.max(greenComponent - maxComponent, 0);
+      blueComponent = Math.max(blueComponent - maxComponent, 0);
+    }
+    return RasterLayer.pack(redComponent, blueComponent, greenComponent, RasterLayer.alpha(argb));
+  }
+
+  /**
+   * Restricts the component value, so it is not greater than the max value or less than the minimum
+   * value.
+   * @param component - value of the component.
+   * @param maxValue - largest value of a component.
+   * @return integer value of the component. Applies restrictions if necessary.
+   */
+  private static int checkComponentOutOfBound(int component, int maxValue) {
+    if (component > maxValue) {
+      return maxValue;
+    } else if (component < 0) {
+      return 0;
+    } else {
+      return component;
+    }
+  }
+
+  /**
+   * Converts from RGB representation to HSL representation.
+   * @param r - red component value.
+   * @param g - green component value.
+   * @param b - green component value.
+   * @return A pixel after it has been converted to HSL value.
+   */
+  private static Pixels convertRGBToHSL(double r, double g, double b) {
+    double componentMax = Math.max(r, Math.max(g, b));
+    double componentMin = Math.min(r, Math.min(g, b));
+    double delta = componentMax - componentMin;
+
+    double lightness = (componentMax + componentMin) / 2;
+    double hue;
+    double saturation;
+    if (delta == 0) {
+      hue = 0;
+      saturation = 0;
+    } else {
+      saturation = delta / (1 - Math.abs(2 * lightness - 1));
+      hue = 0;
+      if (componentMax == r) {
+        hue = (g - b) / delta;
+        while (hue < 0) {
+          hue += 6; //hue must be positive to find the appropriate modulus
+        }
+        hue = hue % 6;
+      } else if (componentMax == g) {
+        hue = (b - r) / delta;
+        hue += 2;
+      } else if (componentMax == b) {
+        hue = (r - g) / delta;
+        hue += 4;
+      }
+
+      hue = hue * 60;
+    }
+
+    return new Pixels(hue, saturation, lightness);
+
+  }
+
+  /**
+   * Converts from HSL representation to RGB representation.
+   * @param hue - hue component of the HSL representation.
+   * @param saturation - saturation component of the HSL representation.
+   * @param lightness - lightness component of the HSL representation.
+   * @return a list of double containing the converted RGB values.
+   */
+  private static double[] convertHSLtoRGB(double hue, double saturation, double lightness) {
+    double r = convertFn(hue, saturation, lightness, 0) * 255;
+    double g = convertFn(hue, saturation, lightness, 8) * 255;
+    double b = convertFn(hue, saturation, lightness, 4) * 255;
+
+    double[] pixels = {r, g, b};
+
+    return pixels;
+  }
+
+  /**
+   * Computes the RGB components given the HSL representation.
+   * @param hue - hue component of the HSL representation.
+   * @param saturation - saturation component of the HSL representation.
+   * @param lightness - lightness component of the HSL representation.
+   * @param n - factor used to compute the respective HSL value.
+   * @return - a double value containing the computed HSL value.
+   */
+  private static double convertFn(double hue, double saturation, double lightness, int n) {
+    double k = (n + (hue / 30)) % 12;
+    double a  = saturation * Math.min(lightness, 1 - lightness);
+    return lightness - a * Math.max(-1, Math.min(k - 3, Math.min(9 - k, 1)));
+  }
+}
@@ -0,0 +1,97 @@
+package model;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes text made of numbers and short strings to a stream through a fixed-size buffer. Numbers
+ * are formatted straight into the buffer, so writing costs the same for every pixel no matter how
+ * much has been written before, and memory use does not grow with the size of the output.
+ */
+class TextEncoder {
+  private static final int BUFFER_SIZE = 1 << 16;
+
+  private final OutputStream out;
+  private final byte[] buffer;
+  private int position;
+
+  /**
+   * Initializes an encoder writing to the given stream.
+   * @param out - stream the text is written to.
+   */
+  TextEncoder(OutputStream out) {
+    this.out = out;
+    this.buffer = new byte[BUFFER_SIZE];
+    this.position = 0;
+  }
+
+  /**
+   * Writes a string encoded as UTF-8.
+   * @param text - text to be written.
+   * @return this encoder.
+   * @throws IOException - if the stream cannot be written to.
+   */
+  TextEncoder write(String text) throws IOException {
+    byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+    if (bytes.length > this.buffer.length - this.position) {
+      flush();
+      if (bytes.length > this.buffer.length) {
+        this.out.write(bytes);
+        return this;
+      }
+    }
+    System.arraycopy(bytes, 0, this.buffer, this.position, bytes.length);
+    this.position += bytes.length;
+    return this;
+  }
+
+  /**
+   * Writes a single ASCII character.
+   * @param c - character to be written.
+   * @return this encoder.
+   * @throws IOException - if the stream cannot be written to.
+   */
+  TextEncoder write(char c) throws IOException {
+    if (this.position == this.buffer.length) {
+      flush();
+    }
+    this.buffer[this.position++] = (byte) c;
+    return this;
+  }
+
+  /**
+   * Writes a non-negative number in decimal.
+   * @param value - number to be written.
+   * @return this encoder.
+   * @throws IOException - if the stream cannot be written to.
+   */
+  TextEncoder write(int value) throws IOException {
+    if (value < 0) {
+      return write(Integer.toString(value));
+    }
+    if (this.buffer.length - this.position < 10) {
+      flush();
+    }
+    int digits = 1;
+    for (int rest = value / 10; rest > 0; rest /= 10) {
+      digits++;
+    }
+    for (int i = this.position + digits - 1; i >= this.position; i--) {
+      this.buffer[i] = (byte) ('0' + value % 10);
+      value /= 10;
+    }
+    this.position += digits;
+    return this;
+  }
+
+  /**
+   * Writes everything buffered so far to the stream and flushes it.
+   * @throws IOException - if the stream cannot be written to.
+   */
+  void flush() throws IOException {
+    this.out.write(this.buffer, 0, this.position);
+    this.position = 0;
+    this.out.flush();
+  }
+}
@@ -1,6 +1,8 @@
 package view;
 
 import controller.CollageGUIController;
+import controller.PreviewPyramid;
+import controller.RenderScheduler;
 
 import javax.swing.JFrame;
 import javax.swing.JPanel;
@@ -14,18 +16,13 @@ import javax.swing.JOptionPane;
 import javax.swing.Box;
 import javax.swing.JFileChooser;
 import javax.swing.JComboBox;
-import javax.swing.ImageIcon;
 import javax.swing.JMenuItem;
+import javax.swing.SwingUtilities;
 
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
-import java.awt.image.BufferedImage;
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
-import java.io.StringReader;
-import java.nio.file.Files;
-import java.nio.file.Path;
 import java.awt.FlowLayout;
 import java.awt.Container;
 import java.awt.Dimension;
@@ -39,22 +36,38 @@ import java.awt.BorderLayout;
 public class CollageGUIViewImpl extends JFrame implements ActionListener, CollageGUIView {
 
   private CollageGUIController guiController;
+  private final PreviewRenderer previewRenderer;
+  private final RenderScheduler renderScheduler;
 
   JPanel imagePanel = null;
-  JLabel imageLabel = null;
-  private File tempImage = null;
+  ZoomablePreviewPanel previewPanel = null;
 
   /**
-   * Represents the CollageGUIViewImpl constructor.
+   * Represents the CollageGUIViewImpl constructor. The preview is rendered one frame after the
+   * last of a burst of actions.
    * @param guiController represents the gui controller.
    */
   public CollageGUIViewImpl(CollageGUIController guiController) {
+    this(guiController, RenderScheduler.FRAME_MILLIS);
+  }
+
+  /**
+   * Represents the CollageGUIViewImpl constructor. Actions coming in quicker than the given
+   * interval are rendered together, once the interval has passed after the last of them.
+   * @param guiController represents the gui controller.
+   * @param renderDelayMillis time without actions after which the preview is rendered.
+   */
+  public CollageGUIViewImpl(CollageGUIController guiController, long renderDelayMillis) {
     this.guiController = guiController;
-    try {
-      tempImage = File.createTempFile("temp-image", ".ppm");
-    } catch (IOException e) {
-      throw new RuntimeException(e);
-    }
+    this.previewRenderer = new PreviewRenderer(guiController, this::showPreview, message -> {
+      try {
+        renderMessage(message);
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    });
+    this.renderScheduler = new RenderScheduler(renderDelayMillis,
+            () -> SwingUtilities.invokeLater(this.previewRenderer::requestRender));
     setTitle("Collage GUI");
     setSize(800, 600);
     setResizable(false);
@@ -63,6 +76,7 @@ public class CollageGUIViewImpl extends JFrame implements ActionListener, Collag
     JMenuBar menuBar = new JMenuBar();
     createFileMenu(menuBar);
     createLayerMenu(menuBar);
+    createViewMenu(menuBar);
 
     // Set the menu bar
     setJMenuBar(menuBar);
@@ -73,10 +87,8 @@ public class CollageGUIViewImpl extends JFrame implements ActionListener, Collag
     //a border around the panel with a caption
     imagePanel.setBorder(BorderFactory.createEmptyBorder());
 
-    imageLabel = new JLabel();
-    imageLabel.setHorizontalAlignment(JLabel.CENTER);
-    imageLabel.setVerticalAlignment(JLabel.CENTER);
-    JScrollPane imageScrollPane = new JScrollPane(imageLabel);
+    previewPanel = new ZoomablePreviewPanel();
+    JScrollPane imageScrollPane = new JScrollPane(previewPanel);
     imageScrollPane.setPreferredSize(new Dimension(775, 530));
     imagePanel.add(imageScrollPane);
     container.add(imagePanel, BorderLayout.CENTER);
@@ -240,15 +252,25 @@ public class CollageGUIViewImpl extends JFrame implements ActionListener, Collag
             renderMessage("Filter has been successfully set!");
           }
           break;
+        // zooming only changes how the preview is drawn, so nothing is rendered
+        case "Zoom In":
+          previewPanel.zoomIn();
+          return;
+        case "Zoom Out":
+          previewPanel.zoomOut();
+          return;
+        case "Actual Size":
+          previewPanel.zoomToActualSize();
+          return;
+        case "Fit to Window":
+          previewPanel.zoomToFit();
+          return;
         default:
           break;
       }
-      this.guiController.saveImage(this.tempImage);
-      String ppmContent = Files.readString(Path.of(tempImage.getPath()));
-      BufferedImage image = readPPM(ppmContent);
-      imageLabel.setIcon(new ImageIcon(image));
-      imageLabel.setLayout(new FlowLayout(FlowLayout.CENTER));
-      imagePanel.repaint();
+      // the project is rendered in the background once the actions stop coming, and shown once
+      // it is ready
+      this.renderScheduler.requestRender();
     } catch (IllegalArgumentException | IllegalStateException | IOException ex) {
       try {
         renderMessage(ex.getMessage());
@@ -258,6 +280,14 @@ public class CollageGUIViewImpl extends JFrame implements ActionListener, Collag
     }
   }
 
+  /**
+   * Shows the rendered preview of the project.
+   * @param pyramid the preview pyramid of the project.
+   */
+  private void showPreview(PreviewPyramid pyramid) {
+    previewPanel.setPyramid(pyramid);
+  }
+
   /**
    * Represents the createFileMenu in the gui.
    * @param menuBar the menuBar element.
@@ -310,6 +340,21 @@ public class CollageGUIViewImpl extends JFrame implements ActionListener, Collag
     menuBar.add(layerMenu);
   }
 
+  /**
+   * Represents the createViewMenu in the gui.
+   * @param menuBar menuBar element.
+   */
+  private void createViewMenu(JMenuBar menuBar) {
+    JMenu viewMenu = new JMenu("View");
+    for (String zoomCommand : new String[]{"Zoom In", "Zoom Out", "Actual Size",
+        "Fit to Window"}) {
+      JMenuItem zoomItem = new JMenuItem(zoomCommand);
+      zoomItem.addActionListener(this);
+      viewMenu.add(zoomItem);
+    }
+    menuBar.add(viewMenu);
+  }
+
   /**
    * Represents the renderMessage method.
    * @param message the message to be printed.
@@ -320,44 +365,4 @@ public class CollageGUIViewImpl extends JFrame implements ActionListener, Collag
     System.out.println("Message to render: " + message);
     JOptionPane.showMessageDialog(this, message);
   }
-
-  /**
-   * represents the readPPM Method.
-   * @param ppmContent the string for ppm content.
-   * @return BufferedIamge.
-   * @throws IOException throws exception when the ppm format is invalid.
-   */
-  private static BufferedImage readPPM(String ppmContent) throws IOException {
-    BufferedReader reader = new BufferedReader(new StringReader(ppmContent));
-    String magicNumber = reader.readLine();
-    if (!"P3".equals(magicNumber)) {
-      throw new IOException("Invalid PPM file format");
-    }
-    String dimensionsLine = reader.readLine();
-    String[] dimensions = dimensionsLine.split(" ");
-    int width = Integer.parseInt(dimensions[0]);
-    int height = Integer.parseInt(dimensions[1]);
-
-    int maxValue = Integer.parseInt(reader.readLine());
-
-    BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
-
-    for (int y = 0; y < height; y++) {
-      String[] rows = reader.readLine() != null ? reader.readLine().split(" ") : new String[0];
-      if (rows.length > 0) {
-        int rowVal = 0;
-        for (int x = 0; x < width; x++) {
-          int r = Integer.parseInt(rows[rowVal]);
-          rowVal++;
-          int g = Integer.parseInt(rows[rowVal]);
-          rowVal++;
-          int b = Integer.parseInt(rows[rowVal]);
-          rowVal++;
-          int rgb = ((r & 0xFF) << 16) | ((g & 0xFF) << 8) | (b & 0xFF);
-          image.setRGB(x, y, rgb);
-        }
-      }
-    }
-    return image;
-  }
 }
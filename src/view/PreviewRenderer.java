@@ -0,0 +1,85 @@
+package view;
+
+import controller.CollageGUIController;
+import controller.PreviewPyramid;
+
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
+
+import javax.swing.SwingWorker;
+
+/**
+ * Renders the preview of the project away from the event dispatch thread, so the window keeps
+ * responding while a large project is rendered. A quick draft is shown first when the project is
+ * large enough to need one, then the full render. Only the latest render is wanted: asking for a
+ * new one cancels the one in flight, which stops at its next band of rows, and the result of a
+ * render is only shown if no newer one has been asked for since.
+ * Every method must be called on the event dispatch thread, and both callbacks run on it.
+ */
+class PreviewRenderer {
+  private final CollageGUIController guiController;
+  private final Consumer<PreviewPyramid> onRendered;
+  private final Consumer<String> onFailed;
+  private SwingWorker<PreviewPyramid, PreviewPyramid> current;
+
+  /**
+   * Initializes a renderer with no render in flight.
+   * @param guiController - controller rendering the project.
+   * @param onRendered - shows the preview of a render.
+   * @param onFailed - reports the message of a render that failed.
+   */
+  PreviewRenderer(CollageGUIController guiController, Consumer<PreviewPyramid> onRendered,
+                  Consumer<String> onFailed) {
+    this.guiController = guiController;
+    this.onRendered = onRendered;
+    this.onFailed = onFailed;
+    this.current = null;
+  }
+
+  /**
+   * Starts rendering the project as it is now, cancelling the render in flight if there is one.
+   */
+  void requestRender() {
+    if (this.current != null) {
+      this.current.cancel(false);
+    }
+    this.current = new SwingWorker<PreviewPyramid, PreviewPyramid>() {
+      @Override
+      protected PreviewPyramid doInBackground() {
+        PreviewPyramid draft = guiController.renderDraft();
+        if (draft != null) {
+          publish(draft);
+        }
+        return guiController.renderPreview(this::isCancelled);
+      }
+
+      @Override
+      protected void process(List<PreviewPyramid> drafts) {
+        if (!isCancelled() && current == this) {
+          onRendered.accept(drafts.get(drafts.size() - 1));
+        }
+      }
+
+      @Override
+      protected void done() {
+        if (isCancelled() || current != this) {
+          return;
+        }
+        current = null;
+        try {
+          PreviewPyramid pyramid = get();
+          if (pyramid != null) {
+            onRendered.accept(pyramid);
+          }
+        } catch (InterruptedException | CancellationException e) {
+          // a newer render replaces this one
+        } catch (ExecutionException e) {
+          onFailed.accept(e.getCause().getMessage());
+        }
+      }
+    };
+    this.current.execute();
+  }
+}
@@ -0,0 +1,290 @@
+package view;
+
+import controller.PreviewPyramid;
+
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
+
+import javax.swing.JPanel;
+import javax.swing.JViewport;
+import javax.swing.Scrollable;
+import javax.swing.SwingConstants;
+import javax.swing.SwingUtilities;
+
+/**
+ * Shows the preview of a project at any zoom inside a scroll pane. Only the part of the canvas
+ * visible in the viewport is drawn, from the level of the preview pyramid closest to the zoom, so
+ * the cost of drawing depends on the size of the window rather than the size of the canvas.
+ * The preview is zoomed with the mouse wheel while control is held, around the pointer, and
+ * panned by dragging it.
+ */
+class ZoomablePreviewPanel extends JPanel implements Scrollable {
+  private static final long serialVersionUID = 1L;
+  private static final double MIN_ZOOM = 1.0 / 64;
+  private static final double MAX_ZOOM = 32;
+  private static final double ZOOM_STEP = 1.25;
+
+  private PreviewPyramid pyramid;
+  private double zoom;
+  private Point dragStart;
+
+  /**
+   * Initializes an empty panel at actual size.
+   */
+  ZoomablePreviewPanel() {
+    this.pyramid = null;
+    this.zoom = 1;
+    this.dragStart = null;
+    MouseAdapter mouse = new MouseAdapter() {
+      @Override
+      public void mousePressed(MouseEvent e) {
+        dragStart = e.getLocationOnScreen();
+      }
+
+      @Override
+      public void mouseDragged(MouseEvent e) {
+        JViewport viewport = getViewport();
+        if (viewport == null || dragStart == null) {
+          return;
+        }
+        Point position = viewport.getViewPosition();
+        Point now = e.getLocationOnScreen();
+        position.translate(dragStart.x - now.x, dragStart.y - now.y);
+        dragStart = now;
+        showAt(viewport, position);
+      }
+
+      @Override
+      public void mouseWheelMoved(MouseWheelEvent e) {
+        if (e.isControlDown()) {
+          zoomAround(Math.pow(ZOOM_STEP, -e.getPreciseWheelRotation()), e.getPoint());
+        } else {
+          // without control the wheel scrolls as usual
+          getParent().dispatchEvent(SwingUtilities.convertMouseEvent(ZoomablePreviewPanel.this,
+                  e, getParent()));
+        }
+      }
+    };
+    addMouseListener(mouse);
+    addMouseMotionListener(mouse);
+    addMouseWheelListener(mouse);
+  }
+
+  /**
+   * Shows a preview. A preview of a canvas of another size than the one shown is fitted to the
+   * window if it is larger, and shown at actual size otherwise.
+   * @param pyramid - preview pyramid of the project.
+   */
+  void setPyramid(PreviewPyramid pyramid) {
+    boolean resized = this.pyramid == null || this.pyramid.getWidth() != pyramid.getWidth()
+            || this.pyramid.getHeight() != pyramid.getHeight();
+    this.pyramid = pyramid;
+    if (resized) {
+      this.zoom = 1;
+      JViewport viewport = getViewport();
+      if (viewport != null && (pyramid.getWidth() > viewport.getWidth()
+              || pyramid.getHeight() > viewport.getHeight())) {
+        zoomToFit();
+        return;
+      }
+      revalidate();
+    }
+    repaint();
+  }
+
+  /**
+   * Zooms in one step around the center of the viewport.
+   */
+  void zoomIn() {
+    zoomAround(ZOOM_STEP, null);
+  }
+
+  /**
+   * Zooms out one step around the center of the viewport.
+   */
+  void zoomOut() {
+    zoomAround(1 / ZOOM_STEP, null);
+  }
+
+  /**
+   * Shows the preview at actual size.
+   */
+  void zoomToActualSize() {
+    zoomAround(1 / this.zoom, null);
+  }
+
+  /**
+   * Zooms so that the whole canvas fits in the viewport.
+   */
+  void zoomToFit() {
+    JViewport viewport = getViewport();
+    if (this.pyramid == null || viewport == null || viewport.getWidth() == 0
+            || viewport.getHeight() == 0) {
+      return;
+    }
+    double fit = Math.min((double) viewport.getWidth() / this.pyramid.getWidth(),
+            (double) viewport.getHeight() / this.pyramid.getHeight());
+    zoomAround(fit / this.zoom, null);
+  }
+
+  /**
+   * Changes the zoom, keeping the point of the canvas under an anchor where it is on screen.
+   * @param factor - factor the zoom is multiplied by.
+   * @param anchor - point of the panel kept in place, null for the center of the viewport.
+   */
+  private void zoomAround(double factor, Point anchor) {
+    double zoom = Math.max(MIN_ZOOM, Math.min(MAX_ZOOM, this.zoom * factor));
+    if (this.pyramid == null || zoom == this.zoom) {
+      return;
+    }
+    JViewport viewport = getViewport();
+    if (viewport == null) {
+      this.zoom = zoom;
+      revalidate();
+      repaint();
+      return;
+    }
+    Rectangle visible = viewport.getViewRect();
+    if (anchor == null) {
+      anchor = new Point(visible.x + visible.width / 2, visible.y + visible.height / 2);
+    }
+    Point offset = imageOffset();
+    double canvasX = (anchor.x - offset.x) / this.zoom;
+    double canvasY = (anchor.y - offset.y) / this.zoom;
+    this.zoom = zoom;
+    // the panel takes its new size right away, so the viewport can be moved within it
+    revalidate();
+    viewport.doLayout();
+    offset = imageOffset();
+    showAt(viewport, new Point((int) Math.round(canvasX * zoom + offset.x) - (anchor.x - visible.x),
+            (int) Math.round(canvasY * zoom + offset.y) - (anchor.y - visible.y)));
+    repaint();
+  }
+
+  /**
+   * Scrolls the viewport to a position, kept within the panel.
+   * @param viewport - viewport showing the panel.
+   * @param position - wanted position of the top left corner of the viewport.
+   */
+  private void showAt(JViewport viewport, Point position) {
+    Dimension extent = viewport.getExtentSize();
+    position.x = Math.max(0, Math.min(position.x, getWidth() - extent.width));
+    position.y = Math.max(0, Math.min(position.y, getHeight() - extent.height));
+    viewport.setViewPosition(position);
+  }
+
+  /**
+   * Returns the viewport showing the panel.
+   * @return the viewport, or null if the panel is not in one.
+   */
+  private JViewport getViewport() {
+    return getParent() instanceof JViewport ? (JViewport) getParent() : null;
+  }
+
+  /**
+   * Returns where the canvas starts in the panel. The canvas is centered when it is smaller than
+   * the viewport.
+   * @return the offset of the top left corner of the canvas.
+   */
+  private Point imageOffset() {
+    Dimension size = scaledSize();
+    return new Point(Math.max(0, (getWidth() - size.width) / 2),
+            Math.max(0, (getHeight() - size.height) / 2));
+  }
+
+  /**
+   * Returns the size of the canvas on screen at the current zoom.
+   * @return the scaled size, empty if there is no preview.
+   */
+  private Dimension scaledSize() {
+    if (this.pyramid == null) {
+      return new Dimension(0, 0);
+    }
+    return new Dimension((int) Math.ceil(this.pyramid.getWidth() * this.zoom),
+            (int) Math.ceil(this.pyramid.getHeight() * this.zoom));
+  }
+
+  @Override
+  protected void paintComponent(Graphics g) {
+    super.paintComponent(g);
+    if (this.pyramid == null) {
+      return;
+    }
+    Point offset = imageOffset();
+    Dimension size = scaledSize();
+    Rectangle visible = new Rectangle(offset.x, offset.y, size.width, size.height)
+            .intersection(g.getClipBounds() == null ? getVisibleRect() : g.getClipBounds());
+    if (visible.isEmpty()) {
+      return;
+    }
+
+    // the visible part of the canvas is mapped to the pixels of the level closest to the zoom,
+    // or of a draft while the full render is under way
+    int level = Math.max(this.pyramid.levelFor(this.zoom), this.pyramid.getFinestLevel());
+    double scale = this.zoom * (1 << level);
+    int levelWidth = this.pyramid.getLevel(level).getWidth();
+    int levelHeight = this.pyramid.getLevel(level).getHeight();
+    int sourceLeft = (int) Math.floor((visible.x - offset.x) / scale);
+    int sourceTop = (int) Math.floor((visible.y - offset.y) / scale);
+    int sourceRight = Math.min(levelWidth,
+            (int) Math.ceil((visible.x + visible.width - offset.x) / scale));
+    int sourceBottom = Math.min(levelHeight,
+            (int) Math.ceil((visible.y + visible.height - offset.y) / scale));
+
+    Graphics2D g2 = (Graphics2D) g.create();
+    try {
+      // enlarged pixels are kept sharp, in between levels they are blended
+      g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, this.zoom >= 1
+              ? RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR
+              : RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+      g2.drawImage(this.pyramid.getLevel(level),
+              offset.x + (int) Math.round(sourceLeft * scale),
+              offset.y + (int) Math.round(sourceTop * scale),
+              offset.x + (int) Math.round(sourceRight * scale),
+              offset.y + (int) Math.round(sourceBottom * scale),
+              sourceLeft, sourceTop, sourceRight, sourceBottom, null);
+    } finally {
+      g2.dispose();
+    }
+  }
+
+  @Override
+  public Dimension getPreferredSize() {
+    return scaledSize();
+  }
+
+  @Override
+  public Dimension getPreferredScrollableViewportSize() {
+    return getPreferredSize();
+  }
+
+  @Override
+  public int getScrollableUnitIncrement(Rectangle visibleRect, int orientation, int direction) {
+    return 16;
+  }
+
+  @Override
+  public int getScrollableBlockIncrement(Rectangle visibleRect, int orientation, int direction) {
+    return orientation == SwingConstants.HORIZONTAL ? visibleRect.width : visibleRect.height;
+  }
+
+  @Override
+  public boolean getScrollableTracksViewportWidth() {
+    // a canvas narrower than the viewport is centered in it rather than scrolled
+    return getParent() instanceof JViewport
+            && getParent().getWidth() > getPreferredSize().width;
+  }
+
+  @Override
+  public boolean getScrollableTracksViewportHeight() {
+    return getParent() instanceof JViewport
+            && getParent().getHeight() > getPreferredSize().height;
+  }
+}
@@ -0,0 +1,117 @@
+package controller;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import model.CollageModel;
+import model.CollageModelImpl;
+import model.Filter;
+import model.ILayer;
+import model.RasterLayer;
+
+/**
+ * Tests for reading projects saved in the C1 text format.
+ */
+public class TextProjectReaderTest {
+  private Path file;
+
+  @Before
+  public void setUp() throws IOException {
+    this.file = Files.createTempFile("project", ".collage");
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    Files.deleteIfExists(this.file);
+  }
+
+  /**
+   * Saves a project in the C1 text format and reads it back.
+   * @param model - model holding the project.
+   * @return the canvas content and the layers read back.
+   * @throws IOException - if the file cannot be written or read.
+   */
+  private LinkedHashMap[] roundTrip(CollageModel model) throws IOException {
+    try (OutputStream out = Files.newOutputStream(this.file)) {
+      model.saveProject(out);
+    }
+    return TextProjectReader.read(this.file, 2);
+  }
+
+  @Test
+  public void testLayerNamesStartingWithDigitOrDashRoundTrip() throws IOException {
+    CollageModel model = new CollageModelImpl();
+    model.newProject(3, 4);
+    model.addLayer("7up");
+    model.addLayer("-dash");
+    model.addLayer("top");
+    int[] image = new int[6];
+    Arrays.fill(image, RasterLayer.pack(10, 200, 30, 255));
+    model.addImageToLayer("7up", new RasterLayer(Filter.NORMAL, 2, 3, image), 1, 1, "ppm");
+    model.setFilter("-dash", "red-component");
+
+    LinkedHashMap[] content = roundTrip(model);
+    LinkedHashMap<String, ILayer> layers = content[1];
+
+    assertEquals(4, content[0].get("width"));
+    assertEquals(3, content[0].get("height"));
+    assertEquals(new ArrayList<>(Arrays.asList("default-background", "7up", "-dash", "top")),
+            new ArrayList<>(layers.keySet()));
+    assertEquals(Filter.RED, layers.get("-dash").getFilterOption());
+    assertEquals(Filter.NORMAL, layers.get("7up").getFilterOption());
+    assertEquals(RasterLayer.pack(10, 200, 30, 255), layers.get("7up").getRaster()[5]);
+    assertEquals(RasterLayer.pack(255, 255, 255, 0), layers.get("7up").getRaster()[0]);
+  }
+
+  @Test
+  public void testLoadedProjectMatchesSavedProject() throws IOException {
+    CollageModel model = new CollageModelImpl();
+    model.newProject(2, 2);
+    model.addLayer("1");
+    model.setFilter("1", "brighten-luma");
+    String saved = model.saveProject();
+
+    CollageModel loaded = new CollageModelImpl();
+    loaded.loadProject(roundTrip(model));
+
+    assertEquals(Arrays.asList("default-background", "1"), loaded.getLayerNames());
+    assertEquals(saved, loaded.saveProject());
+  }
+
+  @Test
+  public void testLayerCutShortIsTransparent() throws IOException {
+    Files.write(this.file, "C1\n2 1\n255\n9lives normal\n1 2 3 255\n".getBytes());
+
+    LinkedHashMap<String, ILayer> layers = TextProjectReader.read(this.file, 1)[1];
+
+    assertEquals(Arrays.asList("9lives"), new ArrayList<>(layers.keySet()));
+    assertArrayEquals(new int[] {RasterLayer.pack(1, 2, 3, 255), 0},
+            layers.get("9lives").getRaster());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNegativeDimensionsRejected() throws IOException {
+    Files.write(this.file, "C1\n-2 1\n255\nlayer normal\n1 2 3 255\n".getBytes());
+
+    TextProjectReader.read(this.file, 1);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testMaxValueLessThanOneRejected() throws IOException {
+    Files.write(this.file, "C1\n1 1\n0\nlayer normal\n0 0 0 0\n".getBytes());
+
+    TextProjectReader.read(this.file, 1);
+  }
+}